@@ -0,0 +1,106 @@
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.awt.geom.Line2D;
+import java.awt.geom.Point2D;
+
+/**
+ * BranchSamplingBenchmark is a small micro-benchmark comparing the original
+ * rejection sampling of branch angles (roll any angle, build a line and
+ * throw the branch away if it is more than 90 degrees from the trunk)
+ * with the direct sampling now used by TreeGenerator.
+ *
+ * Usage (after compiling src into bin):
+ *     javac -cp bin -d bin bench/BranchSamplingBenchmark.java bench/OriginalBranchSampling.java
+ *     java -cp bin BranchSamplingBenchmark
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class BranchSamplingBenchmark {
+
+    private static final int WARMUP_ROUNDS = 5;
+    private static final int MEASURED_ROUNDS = 10;
+    private static final int TREES_PER_ROUND = 200_000;
+
+    /**
+     * Result sink so the JIT cannot drop the sampled points
+     **/
+    private static double sink;
+
+    public static void main(String[] args) {
+        Point2D.Double trunkStart = new Point2D.Double(120, 360);
+        Point2D.Double trunkEnd = new Point2D.Double(130, 220);
+        double branchLength = trunkStart.distance(trunkEnd) / TreePainting.GOLDEN_RATIO;
+        Random r = new Random(42);
+        SplittableRandom sr = new SplittableRandom(42);
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            runRejection(trunkStart, trunkEnd, branchLength, r);
+            runDirect(trunkStart, trunkEnd, branchLength, sr);
+        }
+
+        long rejectionNanos = 0;
+        long directNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            rejectionNanos += runRejection(trunkStart, trunkEnd, branchLength, r);
+            directNanos += runDirect(trunkStart, trunkEnd, branchLength, sr);
+        }
+
+        double rejectionPerTree = (double) rejectionNanos / (MEASURED_ROUNDS * TREES_PER_ROUND);
+        double directPerTree = (double) directNanos / (MEASURED_ROUNDS * TREES_PER_ROUND);
+        System.out.printf("rejection sampling: %8.1f ns/tree%n", rejectionPerTree);
+        System.out.printf("direct sampling:    %8.1f ns/tree%n", directPerTree);
+        System.out.printf("speedup:            %8.2fx%n", rejectionPerTree / directPerTree);
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Samples TREES_PER_ROUND trees the way TreePainting originally did.
+     *
+     * @return elapsed time in nanoseconds
+     */
+    private static long runRejection(Point2D.Double trunkStart, Point2D.Double trunkEnd,
+                                     double branchLength, Random r) {
+        long start = System.nanoTime();
+        Line2D.Double trunkLine = new Line2D.Double(trunkStart, trunkEnd);
+        for (int t = 0; t < TREES_PER_ROUND; t++) {
+            int numBranches = 0;
+            while (numBranches < TreePainting.NUM_BRANCHES) {
+                Point2D.Double branchEndPoint = computeEndpoint(trunkEnd, branchLength,
+                        r.nextDouble() * 2 * Math.PI);
+                Line2D.Double branchLine = new Line2D.Double(trunkEnd, branchEndPoint);
+                if (OriginalBranchSampling.getAbsoluteAngleBetween(trunkLine, branchLine) < Math.PI / 2) {
+                    sink += branchEndPoint.getX();
+                    numBranches++;
+                }
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Samples TREES_PER_ROUND trees with the direct, bounded loop.
+     *
+     * @return elapsed time in nanoseconds
+     */
+    private static long runDirect(Point2D.Double trunkStart, Point2D.Double trunkEnd,
+                                  double branchLength, SplittableRandom r) {
+        long start = System.nanoTime();
+        double trunkAngle = TreeGenerator.getTrunkAngle(trunkStart.getX(), trunkStart.getY(),
+                trunkEnd.getX(), trunkEnd.getY());
+        for (int t = 0; t < TREES_PER_ROUND; t++) {
+            for (int i = 0; i < TreePainting.NUM_BRANCHES; i++) {
+                double angle = TreeGenerator.getRandomBranchAngle(trunkAngle, TreePainting.BRANCH_CONE, r);
+                sink += trunkEnd.getX() + branchLength * Math.cos(angle);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * The original end point computation (one Point2D per sample).
+     */
+    private static Point2D.Double computeEndpoint(Point2D p, double length, double angle) {
+        return new Point2D.Double(p.getX() + length * Math.cos(angle),
+                p.getY() + length * Math.sin(angle));
+    }
+}
@@ -0,0 +1,32 @@
+import java.awt.geom.Line2D;
+
+/**
+ * OriginalBranchSampling keeps the original branch angle check, which
+ * branch sampling used before it sampled inside the cone, so that the
+ * benchmarks can compare against it.
+ *
+ * @author: Sabirah Shuaybi
+ */
+final class OriginalBranchSampling {
+
+    private OriginalBranchSampling() {
+    }
+
+    /**
+     * The original vector formula for the angle between two lines.
+     *
+     * @param line1: the first line
+     * @param line2: the second line
+     * @return the angle between the lines (in radians, 0 to PI)
+     */
+    static double getAbsoluteAngleBetween(Line2D.Double line1, Line2D.Double line2) {
+        double x1 = line1.getX2() - line1.getX1();
+        double y1 = line1.getY2() - line1.getY1();
+        double x2 = line2.getX2() - line2.getX1();
+        double y2 = line2.getY2() - line2.getY1();
+
+        double numer = (x1 * x2 + y1 * y2);
+        double denom = (Math.sqrt(x1 * x1 + y1 * y1) * Math.sqrt(x2 * x2 + y2 * y2));
+        return Math.acos(numer / denom);
+    }
+}
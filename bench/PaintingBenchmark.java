@@ -0,0 +1,233 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.util.Random;
+import java.util.SplittableRandom;
+import java.awt.geom.Line2D;
+import java.lang.management.ManagementFactory;
+import java.awt.image.BufferedImage;
+
+/**
+ * PaintingBenchmark measures the throughput and allocation rate of the
+ * painting hot paths, each rendering into an offscreen Graphics2D:
+ * <ul>
+ *     <li>generating and painting a tree (branch sampling plus drawing) at several tree sizes,</li>
+ *     <li>painting a large tree zoomed out, with and without level of detail,</li>
+ *     <li>a poster-size forest, painted by Java2D and by the TileRasterizer,</li>
+ *     <li>paintLeaf,</li>
+ *     <li>branch angle sampling, against the original angle-between-lines check,</li>
+ *     <li>every theme's (see ThemeRegistry) paintBackground at several panel sizes, its getLeafColor
+ *     and painting a tree of about 10^3 segments in its colors,</li>
+ *     <li>updating and drawing 100,000 particles (one frame of snow),</li>
+ *     <li>a steady-state repaint (paintComponent of an existing tree) for every season,
+ *     which should allocate nothing beyond what Java2D itself allocates.</li>
+ * </ul>
+ * Each benchmark is warmed up and then timed for a fixed period; the
+ * allocation rate comes from the JVM's per-thread allocation counter.
+ * <p>
+ * JMH would be the usual harness, but it cannot generate benchmarks for
+ * classes in the default package, which is where all painting code lives.
+ * <p>
+ * Usage: mvn -P bench compile exec:java [-Dexec.args="filter"]
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class PaintingBenchmark {
+
+    private static final long WARMUP_NANOS = 500_000_000L;
+    private static final long MEASURE_NANOS = 1_000_000_000L;
+
+    /**
+     * Panel sizes: collage panel, single panel and a full HD wall panel
+     **/
+    private static final int[][] PANEL_SIZES = {{240, 500}, {400, 500}, {1920, 1080}};
+
+    /**
+     * Tree sizes as {depth, branching factor}: the original tree, then
+     * about 10^3 and 10^5 segments
+     **/
+    private static final int[][] TREE_SIZES = {{1, TreePainting.NUM_BRANCHES}, {3, 10}, {5, 10}};
+
+    /**
+     * Size of the poster and number of trees on it
+     **/
+    private static final int POSTER_WIDTH = 4800;
+    private static final int POSTER_HEIGHT = 3200;
+    private static final int POSTER_TREES = 24;
+
+    private static final com.sun.management.ThreadMXBean THREADS =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+    /**
+     * Result sink so the JIT cannot drop the measured work
+     **/
+    private static double sink;
+
+    /**
+     * A benchmarked operation
+     **/
+    private interface Operation {
+        void run();
+    }
+
+    public static void main(String[] args) {
+        String filter = args.length > 0 ? args[0] : "";
+        System.out.printf("%-45s %14s %12s %12s%n", "benchmark", "ops/s", "ns/op", "B/op");
+
+        BufferedImage image = new BufferedImage(400, 500, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+
+        //Tree generation plus drawing
+        for (int[] size : TREE_SIZES) {
+            TreePainting painting = new TreePainting();
+            painting.setTreeGenerator(new TreeGenerator(size[0], size[1], TreePainting.BRANCH_CONE,
+                    TreeGenerator.DEFAULT_MAX_SEGMENTS));
+            SplittableRandom seeds = new SplittableRandom(1);
+            run(filter, "paintTree depth=" + size[0] + " branches=" + size[1], () -> {
+                TreeModel tree = painting.generateTree(200, 360, 200, 220, seeds.nextLong());
+                painting.paintTree(g, tree);
+            });
+
+            TreeModel tree = painting.generateTree(200, 360, 200, 220, 1);
+            run(filter, "paintTree replay depth=" + size[0] + " branches=" + size[1],
+                    () -> painting.paintTree(g, tree));
+        }
+
+        //A large tree seen from far away (a quarter of its size), with and without level of detail
+        TreePainting farPainting = new TreePainting();
+        farPainting.setTreeGenerator(new TreeGenerator(5, 10, TreePainting.BRANCH_CONE,
+                TreeGenerator.DEFAULT_MAX_SEGMENTS));
+        TreeModel farTree = farPainting.generateTree(200, 360, 200, 220, 1);
+        Graphics2D farGraphics = image.createGraphics();
+        farGraphics.scale(0.25, 0.25);
+        run(filter, "paintTree zoomed out depth=5 lod", () -> farPainting.paintTree(farGraphics, farTree));
+        run(filter, "paintTree zoomed out depth=5 no lod", () -> {
+            farPainting.setLevelOfDetail(false);
+            farPainting.paintTree(farGraphics, farTree);
+            farPainting.setLevelOfDetail(true);
+        });
+        farGraphics.dispose();
+
+        //A poster-size forest, painted by Java2D on one thread and by the tile rasterizer
+        TreePainting poster = new TreePainting();
+        poster.setRetainedMode(false);
+        poster.setSize(POSTER_WIDTH, POSTER_HEIGHT);
+        poster.setModelSize(POSTER_WIDTH, POSTER_HEIGHT);
+        poster.setTreeGenerator(new TreeGenerator(4, 8, TreePainting.BRANCH_CONE,
+                TreeGenerator.DEFAULT_MAX_SEGMENTS));
+        for (int i = 0; i < POSTER_TREES; i++) {
+            double x = (i + 0.5) * POSTER_WIDTH / POSTER_TREES;
+            poster.plantTree(x, POSTER_HEIGHT * 0.72, x, POSTER_HEIGHT * 0.44, i);
+        }
+        BufferedImage posterImage = new BufferedImage(POSTER_WIDTH, POSTER_HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Graphics2D posterGraphics = posterImage.createGraphics();
+        run(filter, "poster " + POSTER_WIDTH + "x" + POSTER_HEIGHT + " java2d",
+                () -> poster.paintComponent(posterGraphics));
+        posterGraphics.dispose();
+        TileRasterizer rasterizer = new TileRasterizer();
+        run(filter, "poster " + POSTER_WIDTH + "x" + POSTER_HEIGHT + " tiled",
+                () -> rasterizer.render(poster, posterImage));
+
+        TreePainting leafPainting = new TreePainting();
+        run(filter, "paintLeaf", () -> leafPainting.paintLeaf(g, 200, 200, 21.6, Color.GREEN));
+
+        //Branch angle sampling, new and old
+        SplittableRandom angles = new SplittableRandom(1);
+        run(filter, "getRandomBranchAngle", () ->
+                sink += TreeGenerator.getRandomBranchAngle(-Math.PI / 2, TreePainting.BRANCH_CONE, angles));
+        Random legacyAngles = new Random(1);
+        Line2D.Double trunkLine = new Line2D.Double(200, 360, 200, 220);
+        run(filter, "getAbsoluteAngleBetween (original)", () -> {
+            double angle = legacyAngles.nextDouble() * 2 * Math.PI;
+            Line2D.Double branchLine = new Line2D.Double(200, 220,
+                    200 + 86 * Math.cos(angle), 220 + 86 * Math.sin(angle));
+            sink += OriginalBranchSampling.getAbsoluteAngleBetween(trunkLine, branchLine);
+        });
+
+        //One frame of a full particle system
+        ParticleSystem particles = new ParticleSystem(TreePainting.PARTICLE_CAPACITY);
+        int[] pixels = new int[400 * 500];
+        run(filter, "particles update+render 100k", () -> {
+            SplittableRandom flakes = new SplittableRandom(1);
+            while (particles.spawn((float) (flakes.nextDouble() * 400), 0, 0, 30, 0xffffff, 1000)) {
+                //Refill the particles that expired
+            }
+            particles.update(1 / 60f, TreePainting.PARTICLE_GRAVITY, TreePainting.PARTICLE_DRAG,
+                    TreePainting.Y_COORD_FLOOR);
+            particles.render(pixels, 400, 500, TreePainting.PARTICLE_SIZE);
+        });
+
+        //Season backdrops and leaf colors
+        for (String season : ThemeRegistry.getNames()) {
+            TreePainting painting = new TreePainting(ThemeRegistry.get(season));
+            for (int[] size : PANEL_SIZES) {
+                BufferedImage panel = new BufferedImage(size[0], size[1], BufferedImage.TYPE_INT_RGB);
+                Graphics2D panelGraphics = panel.createGraphics();
+                run(filter, season + " paintBackground " + size[0] + "x" + size[1],
+                        () -> painting.paintBackground(panelGraphics, size[0], size[1]));
+                panelGraphics.dispose();
+            }
+
+            SplittableRandom colors = new SplittableRandom(1);
+            run(filter, season + " getLeafColor", () -> sink += painting.getLeafColor(colors).getRGB());
+
+            //Repaint of an already generated tree, as after a resize or expose
+            painting.setRetainedMode(false);
+            painting.setSize(400, 500);
+            painting.plantTree(200, 360, 200, 220, 1);
+            run(filter, season + " repaint", () -> painting.paintComponent(g));
+
+            //Drawing a bigger tree in the season's leaf colors
+            painting.setTreeGenerator(new TreeGenerator(3, 10, TreePainting.BRANCH_CONE,
+                    TreeGenerator.DEFAULT_MAX_SEGMENTS));
+            TreeModel seasonTree = painting.generateTree(200, 360, 200, 220, 1);
+            run(filter, season + " paintTree replay depth=3", () -> painting.paintTree(g, seasonTree));
+        }
+
+        g.dispose();
+        System.out.println("(sink " + sink + ")");
+    }
+
+    /**
+     * Warms up and then measures one operation, printing its
+     * throughput, time per operation and bytes allocated per operation.
+     */
+    private static void run(String filter, String name, Operation op) {
+        if (!name.contains(filter)) {
+            return;
+        }
+
+        loop(op, WARMUP_NANOS);
+
+        long threadId = Thread.currentThread().getId();
+        long allocatedBefore = THREADS.getThreadAllocatedBytes(threadId);
+        long start = System.nanoTime();
+        long ops = loop(op, MEASURE_NANOS);
+        long elapsed = System.nanoTime() - start;
+        long allocated = THREADS.getThreadAllocatedBytes(threadId) - allocatedBefore;
+
+        System.out.printf("%-45s %14.0f %12.1f %12.1f%n", name,
+                ops * 1e9 / elapsed, (double) elapsed / ops, (double) allocated / ops);
+    }
+
+    /**
+     * Runs an operation repeatedly for about the given time
+     * (checking the clock every batch of calls).
+     *
+     * @return the number of calls made
+     */
+    private static long loop(Operation op, long nanos) {
+        long end = System.nanoTime() + nanos;
+        long ops = 0;
+        int batch = 1;
+        while (System.nanoTime() < end) {
+            for (int i = 0; i < batch; i++) {
+                op.run();
+            }
+            ops += batch;
+            if (batch < 1024) {
+                batch *= 2;
+            }
+        }
+        return ops;
+    }
+}
@@ -0,0 +1,352 @@
+import java.awt.geom.AffineTransform;
+import java.awt.Color;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Composite;
+import java.awt.AlphaComposite;
+import java.awt.geom.Line2D;
+import java.awt.image.BufferedImage;
+import javax.swing.Timer;
+
+/**
+ * AnimatedTreePainting is a subclass of TreePainting that, once the user
+ * has painted a tree, morphs it through the seasons: Winter, Spring,
+ * Summer, Fall and back to Winter. A painting of each of those themes
+ * (see ThemeRegistry) is used as a keyframe: each grows the same trunk
+ * from the same seed and provides its backdrop (paintBackground) and
+ * leaf colors (getLeafColor).
+ * Between keyframes the branches and leaves slide from one keyframe's
+ * positions to the next and the backdrop and leaf colors cross-fade.
+ * <p>
+ * A javax.swing.Timer drives the animation at about 60 frames per
+ * second. Each frame shows the animation at its fixed time step, so if
+ * painting falls behind, frames are dropped (and counted) instead of the
+ * animation slowing down. Nothing is allocated per frame: keyframes are
+ * generated once per tree, backdrops come from BackgroundCache, the
+ * cross-fade uses precomputed AlphaComposites and the panel's transform
+ * is saved into one reused AffineTransform. Like every TreePainting, a
+ * frame ends with the particles, drag preview and paint metrics (see
+ * paintOverlays).
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class AnimatedTreePainting extends TreePainting {
+
+    /**
+     * Length of one frame (the fixed time step): 60 frames per second
+     **/
+    private static final long FRAME_NANOS = 1_000_000_000L / 60;
+
+    /**
+     * Each season is shown for HOLD_FRAMES, then morphs
+     * into the next season over MORPH_FRAMES
+     **/
+    private static final int HOLD_FRAMES = 120;
+    private static final int MORPH_FRAMES = 60;
+    private static final int SEASON_FRAMES = HOLD_FRAMES + MORPH_FRAMES;
+
+    /**
+     * Number of precomputed cross-fade opacities
+     **/
+    private static final int ALPHA_STEPS = 64;
+    private static final AlphaComposite[] FADES = new AlphaComposite[ALPHA_STEPS + 1];
+
+    static {
+        for (int i = 0; i <= ALPHA_STEPS; i++) {
+            FADES[i] = AlphaComposite.getInstance(AlphaComposite.SRC_OVER, (float) i / ALPHA_STEPS);
+        }
+    }
+
+    /**
+     * Number of recent frame times kept for instrumentation
+     **/
+    private static final int FRAME_HISTORY = 120;
+
+    /**
+     * The themes of the keyframe seasons, in order
+     **/
+    private static final String[] SEASON_NAMES = {"winter", "spring", "summer", "fall"};
+
+    /**
+     * The keyframe seasons, in order
+     **/
+    private final TreePainting[] seasons = new TreePainting[SEASON_NAMES.length];
+
+    /**
+     * The tree as grown by each keyframe season, or null before the first tree
+     **/
+    private final TreeModel[] keyframes = new TreeModel[seasons.length];
+
+    /**
+     * Each season's shared backdrop at the current panel size
+     **/
+    private final BufferedImage[] backgrounds = new BufferedImage[seasons.length];
+    private int backgroundWidth;
+    private int backgroundHeight;
+
+    private final Timer timer;
+    private final Line2D.Double segmentLine = new Line2D.Double();
+
+    /**
+     * The panel's transform, restored once the keyframes are drawn
+     **/
+    private final AffineTransform panelTransform = new AffineTransform();
+
+    /**
+     * Time at which the animation started and the frame last shown
+     **/
+    private long startNanos;
+    private long frame;
+
+    /**
+     * Frame time instrumentation: how long the most recent paints took
+     * (a ring buffer) and how many frames were skipped to keep up
+     **/
+    private final long[] paintNanos = new long[FRAME_HISTORY];
+    private int paintCount;
+    private long droppedFrames;
+
+    public AnimatedTreePainting() {
+        for (int i = 0; i < seasons.length; i++) {
+            seasons[i] = new TreePainting(ThemeRegistry.get(SEASON_NAMES[i]));
+        }
+        //Keyframes can only be morphed if every season grows the same branches
+        setTreeGenerator(new TreeGenerator());
+
+        //Frames are painted straight from the keyframes, not via the back buffer
+        setRetainedMode(false);
+
+        //Coalescing makes the timer skip ticks rather than queue them up
+        timer = new Timer((int) (FRAME_NANOS / 1_000_000), e -> nextFrame());
+        timer.setCoalesce(true);
+    }
+
+    /**
+     * Grows the tree once per keyframe season (from the same trunk and seed).
+     */
+    protected TreeModel[] generateTrees(double x1, double y1, double x2, double y2, long seed) {
+        TreeModel[] trees = new TreeModel[seasons.length];
+        for (int i = 0; i < seasons.length; i++) {
+            trees[i] = seasons[i].generateTree(x1, y1, x2, y2, seed);
+        }
+        return trees;
+    }
+
+    /**
+     * Only the newest trunk is animated, so its keyframes replace
+     * those still being grown for earlier trunks, which are cancelled.
+     */
+    public void plantTreeLater(double x1, double y1, double x2, double y2, long seed) {
+        cancelPendingGenerations();
+        super.plantTreeLater(x1, y1, x2, y2, seed);
+    }
+
+    /**
+     * Makes the grown trees the keyframes and starts the animation from Winter.
+     */
+    protected void showTrees(TreeModel[] trees) {
+        System.arraycopy(trees, 0, keyframes, 0, keyframes.length);
+        //Only one tree is animated at a time
+        setTree(keyframes[0]);
+
+        startNanos = System.nanoTime();
+        frame = 0;
+        droppedFrames = 0;
+        paintCount = 0;
+        timer.restart();
+        repaint();
+    }
+
+    /**
+     * Uses the generator for every keyframe season too.
+     */
+    public void setTreeGenerator(TreeGenerator generator) {
+        super.setTreeGenerator(generator);
+        for (TreePainting season : seasons) {
+            season.setTreeGenerator(generator);
+        }
+    }
+
+    /**
+     * Advances the animation to the frame due at the current time,
+     * counting any frames that were skipped to get there.
+     */
+    private void nextFrame() {
+        long due = (System.nanoTime() - startNanos) / FRAME_NANOS;
+        if (due == frame) {
+            return;
+        }
+        droppedFrames += due - frame - 1;
+        frame = due;
+        repaint();
+    }
+
+    /**
+     * Paints the current frame: the cross-faded backdrops, then the
+     * trunk and branches and the leaves at their interpolated positions,
+     * and finally the overlays every painting has.
+     *
+     * @param g: The graphics object to draw on
+     */
+    public void paintComponent(Graphics g) {
+        if (keyframes[0] == null) {
+            super.paintComponent(g);
+            return;
+        }
+        long paintStart = System.nanoTime();
+        long paintStartBytes = PaintMetrics.currentThreadAllocatedBytes();
+        Graphics2D g2d = (Graphics2D) g;
+        Composite opaque = g2d.getComposite();
+
+        //Which keyframes to morph between, and how far along (0 to ALPHA_STEPS)
+        int cycleFrame = (int) (frame % (SEASON_FRAMES * seasons.length));
+        int from = cycleFrame / SEASON_FRAMES;
+        int to = (from + 1) % seasons.length;
+        int morphFrame = Math.max(0, cycleFrame % SEASON_FRAMES - HOLD_FRAMES);
+        int step = morphFrame * ALPHA_STEPS / MORPH_FRAMES;
+        float t = (float) step / ALPHA_STEPS;
+
+        acquireBackgrounds();
+        if (backgrounds[from] != null) {
+            g2d.drawImage(backgrounds[from], 0, 0, null);
+            if (step > 0) {
+                g2d.setComposite(FADES[step]);
+                g2d.drawImage(backgrounds[to], 0, 0, null);
+                g2d.setComposite(opaque);
+            }
+        }
+
+        //Keyframes are stored in model coordinates
+        panelTransform.setTransform(g2d.getTransform());
+        g2d.transform(getViewTransform());
+
+        TreeModel a = keyframes[from];
+        TreeModel b = keyframes[to];
+        paintSegments(g2d, a, b, t);
+
+        //Leaves cross-fade from the first keyframe's color to the next's
+        paintLeaves(g2d, a, b, t, seasons[from].getLeafPalette(), a);
+        if (step > 0) {
+            g2d.setComposite(FADES[step]);
+            paintLeaves(g2d, a, b, t, seasons[to].getLeafPalette(), b);
+            g2d.setComposite(opaque);
+        }
+        g2d.setTransform(panelTransform);
+
+        paintNanos[paintCount++ % FRAME_HISTORY] = System.nanoTime() - paintStart;
+        paintOverlays(g, paintStart, paintStartBytes);
+    }
+
+    /**
+     * Paints trunk and branches at positions interpolated
+     * between two keyframes of the same tree.
+     */
+    private void paintSegments(Graphics2D g2d, TreeModel a, TreeModel b, float t) {
+        g2d.setColor(getTheme().getBranchColor());
+        int strokeDepth = -1;
+        for (int i = 0; i < a.getNumSegments(); i++) {
+            int depth = a.getSegmentDepth(i);
+            if (depth != strokeDepth) {
+                g2d.setStroke(getSegmentStroke(depth));
+                strokeDepth = depth;
+            }
+            segmentLine.setLine(
+                    lerp(a.getSegmentX1(i), b.getSegmentX1(i), t), lerp(a.getSegmentY1(i), b.getSegmentY1(i), t),
+                    lerp(a.getSegmentX2(i), b.getSegmentX2(i), t), lerp(a.getSegmentY2(i), b.getSegmentY2(i), t));
+            g2d.draw(segmentLine);
+        }
+    }
+
+    /**
+     * Paints the leaves at positions interpolated between two keyframes,
+     * in the colors of one of them.
+     *
+     * @param palette: the shared leaf colors of the season whose colors are used
+     * @param colors:  the keyframe whose leaf colors are used
+     */
+    private void paintLeaves(Graphics2D g2d, TreeModel a, TreeModel b, float t,
+                             Palette palette, TreeModel colors) {
+        float leafSize = lerp(a.getLeafSize(), b.getLeafSize(), t);
+        for (int i = 0; i < a.getNumLeaves(); i++) {
+            Color leafColor = palette.lookup(colors.getLeafColor(i));
+            paintLeaf(g2d, lerp(a.getLeafX(i), b.getLeafX(i), t), lerp(a.getLeafY(i), b.getLeafY(i), t),
+                    leafSize, leafColor);
+        }
+    }
+
+    private static float lerp(float from, float to, float t) {
+        return from + (to - from) * t;
+    }
+
+    /**
+     * Makes sure each season's backdrop matches the panel size.
+     */
+    private void acquireBackgrounds() {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0
+                || (backgrounds[0] != null && backgroundWidth == width && backgroundHeight == height)) {
+            return;
+        }
+
+        releaseBackgrounds();
+        for (int i = 0; i < seasons.length; i++) {
+            backgrounds[i] = BackgroundCache.acquire(seasons[i], width, height);
+        }
+        backgroundWidth = width;
+        backgroundHeight = height;
+    }
+
+    private void releaseBackgrounds() {
+        for (int i = 0; i < seasons.length; i++) {
+            if (backgrounds[i] != null) {
+                BackgroundCache.release(seasons[i], backgroundWidth, backgroundHeight);
+                backgrounds[i] = null;
+            }
+        }
+    }
+
+    /**
+     * Stops the animation and releases the backdrops when the
+     * painting is removed from its container.
+     */
+    public void removeNotify() {
+        timer.stop();
+        releaseBackgrounds();
+        super.removeNotify();
+    }
+
+    /**
+     * Resumes the animation where it stopped when the painting
+     * is added to a container again.
+     */
+    public void addNotify() {
+        super.addNotify();
+        if (keyframes[0] != null && !timer.isRunning()) {
+            startNanos = System.nanoTime() - frame * FRAME_NANOS;
+            timer.start();
+        }
+    }
+
+    /**
+     * @return the average time the recent frames took to paint, in nanoseconds
+     */
+    public long getAverageFrameNanos() {
+        int count = Math.min(paintCount, FRAME_HISTORY);
+        if (count == 0) {
+            return 0;
+        }
+        long total = 0;
+        for (int i = 0; i < count; i++) {
+            total += paintNanos[i];
+        }
+        return total / count;
+    }
+
+    /**
+     * @return the number of frames skipped since the current tree was planted
+     */
+    public long getDroppedFrames() {
+        return droppedFrames;
+    }
+}
@@ -0,0 +1,116 @@
+import java.awt.Graphics2D;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.awt.image.BufferedImage;
+
+/**
+ * BackgroundCache holds pre-rendered backdrops (sky and floor) shared by
+ * every TreePainting of the same season (SeasonTheme) and panel size. Each
+ * backdrop is rendered once via paintBackground and then simply copied
+ * onto the painting.
+ * <p>
+ * Paintings acquire the backdrop for their current size and release it
+ * when their size changes (or they are removed), so a backdrop is
+ * evicted as soon as no painting of that season and size uses it.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class BackgroundCache {
+
+    private static final Map<Key, Entry> entries = new HashMap<>();
+
+    /**
+     * Returns the shared backdrop for the painting's season at the given
+     * size, rendering it if no painting of that season and size has yet.
+     * Every call must be balanced by a call to release.
+     *
+     * @param painting: the painting whose season (theme) the backdrop is for
+     * @param width:    width of the panel
+     * @param height:   height of the panel
+     * @return the pre-rendered backdrop
+     */
+    public static synchronized BufferedImage acquire(TreePainting painting, int width, int height) {
+        Key key = new Key(painting.getClass(), painting.getTheme(), width, height);
+        Entry entry = entries.get(key);
+
+        if (entry == null) {
+            BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+            Graphics2D g = image.createGraphics();
+            painting.paintBackground(g, width, height);
+            g.dispose();
+
+            entry = new Entry(image);
+            entries.put(key, entry);
+        }
+
+        entry.users++;
+        return entry.image;
+    }
+
+    /**
+     * Gives back a backdrop obtained from acquire. The backdrop is evicted
+     * once no painting of that season and size is using it.
+     *
+     * @param painting: the painting that acquired the backdrop
+     * @param width:    width the backdrop was acquired at
+     * @param height:   height the backdrop was acquired at
+     */
+    public static synchronized void release(TreePainting painting, int width, int height) {
+        Key key = new Key(painting.getClass(), painting.getTheme(), width, height);
+        Entry entry = entries.get(key);
+
+        if (entry != null && --entry.users <= 0) {
+            entries.remove(key);
+        }
+    }
+
+    /**
+     * @return the number of distinct backdrops currently cached
+     */
+    public static synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Season and panel size identifying one backdrop. The painting class
+     * is part of the key too, since a subclass may paint its own backdrop.
+     **/
+    private static final class Key {
+        private final Class<?> painter;
+        private final SeasonTheme season;
+        private final int width;
+        private final int height;
+
+        Key(Class<?> painter, SeasonTheme season, int width, int height) {
+            this.painter = painter;
+            this.season = season;
+            this.width = width;
+            this.height = height;
+        }
+
+        public boolean equals(Object o) {
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return painter == other.painter && season == other.season && width == other.width && height == other.height;
+        }
+
+        public int hashCode() {
+            return Objects.hash(painter, season, width, height);
+        }
+    }
+
+    /**
+     * A cached backdrop and the number of paintings using it
+     **/
+    private static final class Entry {
+        private final BufferedImage image;
+        private int users;
+
+        Entry(BufferedImage image) {
+            this.image = image;
+        }
+    }
+}
@@ -0,0 +1,244 @@
+import java.io.File;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.BufferedReader;
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.awt.Graphics2D;
+import java.nio.file.Files;
+import java.awt.image.BufferedImage;
+
+/**
+ * BatchRenderer renders tree paintings without a display (headless) and
+ * writes each one to a PNG file (or, with --svg, streams it to an SVG file
+ * through an SvgExporter, or with --scene saves its tree as a SceneFile). Every painting goes through the same
+ * TreePainting paint path as the GUI, in the job's season (see ThemeRegistry),
+ * so the images match what the user would see after dragging the same trunk.
+ * <p>
+ * Jobs (see RenderJob) are streamed through a RenderPipeline, so job
+ * lists of any length render in bounded memory. Each thread keeps one
+ * painting per season and reuses it for every job. Poster-size images
+ * are rasterized in parallel tiles by a TileRasterizer, which gives the
+ * same pixels as the paint path.
+ * <p>
+ * Command line usage:
+ * <pre>
+ *     java -cp bin TreeApplication render output-dir -f jobs.txt
+ *     java -cp bin TreeApplication render output-dir "fall 120 360 130 220 42" ...
+ *     java -cp bin TreeApplication render --svg output-dir -f jobs.txt
+ *     java -cp bin TreeApplication render --scene output-dir -f jobs.txt
+ * </pre>
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class BatchRenderer {
+
+    /**
+     * Maximum number of jobs waiting between two pipeline stages, per thread
+     **/
+    private static final int QUEUE_CAPACITY_PER_THREAD = 4;
+
+    /**
+     * Images of at least this many pixels (e.g. posters) are rendered
+     * in tiles by a TileRasterizer rather than through Java2D
+     **/
+    private static final long TILED_RENDER_PIXELS = 4L * 1024 * 1024;
+
+    private final TileRasterizer rasterizer = new TileRasterizer();
+
+    private final File outputDir;
+
+    /**
+     * File format paintings are written in: png, svg or scene
+     **/
+    private final String format;
+
+    /**
+     * Each thread's paintings, keyed by season
+     **/
+    private final ThreadLocal<Map<String, TreePainting>> paintings = ThreadLocal.withInitial(HashMap::new);
+
+    /**
+     * @param outputDir: directory to write the PNG files to
+     */
+    public BatchRenderer(File outputDir) {
+        this(outputDir, "png");
+    }
+
+    /**
+     * @param outputDir: directory to write the files to
+     * @param format:    png, svg (see SvgExporter) or scene (see SceneFile)
+     * @throws IllegalArgumentException if the format is unknown
+     */
+    public BatchRenderer(File outputDir, String format) {
+        if (!format.equals("png") && !format.equals("svg") && !format.equals("scene")) {
+            throw new IllegalArgumentException("unknown format: " + format);
+        }
+        this.outputDir = outputDir;
+        this.format = format;
+    }
+
+    /**
+     * @return true if paintings are rasterized into images (PNG), false
+     * if they are exported straight from the tree (see export)
+     */
+    public boolean isRasterized() {
+        return format.equals("png");
+    }
+
+    /**
+     * Returns the calling thread's painting for a season.
+     *
+     * @param season: the season of the painting
+     * @return the painting
+     */
+    private TreePainting getPainting(String season) {
+        return paintings.get().computeIfAbsent(season, s -> {
+            TreePainting p = new TreePainting(ThemeRegistry.get(s));
+            //The image already is the offscreen buffer
+            p.setRetainedMode(false);
+            return p;
+        });
+    }
+
+    /**
+     * Generates the tree of one job on the calling thread.
+     *
+     * @param job: the painting to generate
+     * @return the job's tree
+     */
+    public TreeModel generateTree(RenderJob job) {
+        return getPainting(job.getSeason()).generateTree(job.getX1(), job.getY1(),
+                job.getX2(), job.getY2(), job.getSeed());
+    }
+
+    /**
+     * Generates and renders one job into a new image on the calling thread.
+     *
+     * @param job: the painting to render
+     * @return the rendered painting
+     */
+    public BufferedImage render(RenderJob job) {
+        BufferedImage image = new BufferedImage(job.getWidth(), job.getHeight(), BufferedImage.TYPE_INT_RGB);
+        render(job, generateTree(job), image);
+        return image;
+    }
+
+    /**
+     * Renders an already generated tree into an existing image
+     * (of the job's size) on the calling thread, or for large images
+     * on the calling thread and the TileRasterizer's pool.
+     *
+     * @param job:   the painting to render
+     * @param tree:  the job's tree (see generateTree)
+     * @param image: the image to render into
+     */
+    public void render(RenderJob job, TreeModel tree, BufferedImage image) {
+        TreePainting painting = getPainting(job.getSeason());
+        painting.setSize(job.getWidth(), job.getHeight());
+        //Job coordinates are pixels of the job's image
+        painting.setModelSize(job.getWidth(), job.getHeight());
+        painting.setTree(tree);
+
+        if ((long) image.getWidth() * image.getHeight() >= TILED_RENDER_PIXELS
+                && image.getType() == BufferedImage.TYPE_INT_RGB) {
+            rasterizer.render(painting, image);
+            return;
+        }
+
+        Graphics2D g = image.createGraphics();
+        painting.paintComponent(g);
+        g.dispose();
+    }
+
+    /**
+     * Writes an already generated tree as an SVG or scene file
+     * on the calling thread.
+     *
+     * @param job:  the painting to export
+     * @param tree: the job's tree (see generateTree)
+     * @param file: the file to write
+     * @throws IOException if the file cannot be written
+     */
+    public void export(RenderJob job, TreeModel tree, File file) throws IOException {
+        if (format.equals("scene")) {
+            SceneFile.write(file.toPath(), job.getSeason(), job.getWidth(), job.getHeight(), List.of(tree));
+            return;
+        }
+
+        TreePainting painting = getPainting(job.getSeason());
+        painting.setSize(job.getWidth(), job.getHeight());
+        painting.setModelSize(job.getWidth(), job.getHeight());
+        painting.setTree(tree);
+
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            new SvgExporter(painting).export(channel, job.getWidth(), job.getHeight());
+        }
+    }
+
+    /**
+     * Returns the file a job's painting is written to.
+     *
+     * @param index: position of the job in the job list
+     * @param job:   the job
+     * @return the PNG (SVG, scene) file for the job
+     */
+    public File getOutputFile(long index, RenderJob job) {
+        return new File(outputDir, String.format("%06d-%s-%d.%s", index, job.getSeason(), job.getSeed(),
+                format));
+    }
+
+    /**
+     * Renders the jobs given on the command line without a display.
+     *
+     * @param args: optional --svg or --scene, output directory, then "-f jobs-file" or job specs
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        System.setProperty("java.awt.headless", "true");
+
+        String format = "png";
+        if (args.length > 0 && (args[0].equals("--svg") || args[0].equals("--scene"))) {
+            format = args[0].substring(2);
+            args = Arrays.copyOfRange(args, 1, args.length);
+        }
+
+        if (args.length < 2) {
+            System.err.println("usage: render [--svg | --scene] output-dir (-f jobs-file | \"season x1 y1 x2 y2 seed [width height]\" ...)");
+            System.exit(2);
+        }
+
+        File outputDir = new File(args[0]);
+        Files.createDirectories(outputDir.toPath());
+
+        //Either a job file or one job per argument
+        BufferedReader jobs;
+        if (args.length == 3 && args[1].equals("-f")) {
+            jobs = Files.newBufferedReader(new File(args[2]).toPath());
+        } else {
+            jobs = new BufferedReader(new StringReader(String.join("\n", Arrays.copyOfRange(args, 1, args.length))));
+        }
+
+        int threads = Runtime.getRuntime().availableProcessors();
+        RenderPipeline pipeline = new RenderPipeline(new BatchRenderer(outputDir, format), threads, threads,
+                QUEUE_CAPACITY_PER_THREAD * threads);
+
+        long start = System.nanoTime();
+        long failures;
+        try {
+            failures = pipeline.run(jobs);
+        } finally {
+            jobs.close();
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("rendered %d paintings (%d failed) in %.2f s%n", pipeline.getRendered(), failures, seconds);
+        if (failures > 0) {
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,61 @@
+import java.util.Arrays;
+
+/**
+ * CellSet is a reusable set of grid cells (x, y pairs) used while
+ * painting to remember which pixels or small areas are already covered.
+ * It is an open-addressing hash table of packed coordinates; clearing it
+ * is constant time (each slot is stamped with the generation it was
+ * filled in), so it can be reset for every tree without allocating.
+ *
+ * @author: Sabirah Shuaybi
+ */
+class CellSet {
+
+    private long[] keys = new long[0];
+    private int[] stamps = new int[0];
+    private int generation;
+
+    /**
+     * Empties the set and makes room for the given number of cells.
+     *
+     * @param expected: the most cells that will be added before the next reset
+     */
+    void reset(int expected) {
+        //Keep the table at most half full so probe runs stay short
+        int capacity = Integer.highestOneBit(Math.max(16, 2 * expected) - 1) << 1;
+        if (capacity > keys.length) {
+            keys = new long[capacity];
+            stamps = new int[capacity];
+            generation = 0;
+        }
+        generation++;
+        if (generation == 0) {
+            //Wrapped around: stale stamps could now look current
+            Arrays.fill(stamps, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Adds a cell to the set.
+     *
+     * @param x: column of the cell
+     * @param y: row of the cell
+     * @return true if the cell was not in the set yet
+     */
+    boolean add(int x, int y) {
+        long key = ((long) x << 32) | (y & 0xFFFFFFFFL);
+        int mask = keys.length - 1;
+        long hash = key * 0x9E3779B97F4A7C15L;
+        int slot = (int) (hash ^ (hash >>> 32)) & mask;
+        while (stamps[slot] == generation) {
+            if (keys[slot] == key) {
+                return false;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        stamps[slot] = generation;
+        return true;
+    }
+}
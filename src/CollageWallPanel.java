@@ -0,0 +1,272 @@
+import java.awt.Font;
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.Component;
+import java.awt.BorderLayout;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import javax.swing.JLabel;
+import javax.swing.JPanel;
+import javax.swing.JViewport;
+import javax.swing.Scrollable;
+import javax.swing.SwingUtilities;
+import javax.swing.SwingConstants;
+import javax.swing.UIManager;
+import javax.swing.BorderFactory;
+import javax.swing.border.Border;
+import javax.swing.event.ChangeListener;
+
+/**
+ * CollageWallPanel is a scrollable grid of any number of TreePaintings
+ * (rows x columns), meant to be placed in a JScrollPane. The seasons
+ * of the panels cycle through a configurable list.
+ * <p>
+ * Panels are created lazily, the first time they scroll into view, and
+ * only the panels in view are components of the wall, so only they are
+ * laid out, painted and animated. Panels scrolled out of view keep their
+ * trees, but their buffers (images and falling particles) are released,
+ * least recently seen first, once the buffers of all panels exceed a
+ * memory budget. Only panels whose season has particles animate any.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class CollageWallPanel extends JPanel implements Scrollable {
+
+    /**
+     * Default size of one panel (painting plus its label)
+     * and default budget for the buffers of all panels
+     **/
+    public static final int DEFAULT_CELL_WIDTH = TreePainting.REFERENCE_WIDTH;
+    public static final int DEFAULT_CELL_HEIGHT = TreePainting.REFERENCE_HEIGHT + 30;
+    public static final long DEFAULT_BUFFER_BUDGET = 256L * 1024 * 1024;
+
+    private static final Color LABEL_BORDER_COLOR = new Color(59, 72, 175);
+
+    private final int rows;
+    private final int columns;
+    private final int cellWidth;
+    private final int cellHeight;
+    private final String[] seasons;
+    private final long bufferBudget;
+
+    /**
+     * Panels created so far, by index (row * columns + column)
+     **/
+    private final Map<Integer, JPanel> cells = new HashMap<>();
+    private final Map<Integer, TreePainting> paintings = new HashMap<>();
+
+    /**
+     * Indices of the panels currently in view (and added to the wall)
+     **/
+    private final Rectangle shownCells = new Rectangle();
+
+    /**
+     * Paintings that may hold image buffers, least recently in view first
+     **/
+    private final LinkedHashMap<Integer, TreePainting> recentlyShown = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final ChangeListener viewportListener = e -> updateShownCells();
+    private JViewport viewport;
+
+    private final Border labelBorder = BorderFactory.createLineBorder(LABEL_BORDER_COLOR, 5);
+    private final Font boldFont = new Font(UIManager.getFont("Label.font").getFontName(), Font.BOLD, 16);
+
+    /**
+     * Constructor for a wall with the default panel size and buffer budget.
+     *
+     * @param rows:    number of rows of panels
+     * @param columns: number of columns of panels
+     * @param seasons: seasons of the panels, repeated in order
+     *                 (names of themes, see ThemeRegistry)
+     */
+    public CollageWallPanel(int rows, int columns, String... seasons) {
+        this(rows, columns, DEFAULT_CELL_WIDTH, DEFAULT_CELL_HEIGHT, DEFAULT_BUFFER_BUDGET, seasons);
+    }
+
+    /**
+     * @param rows:         number of rows of panels
+     * @param columns:      number of columns of panels
+     * @param cellWidth:    width of each panel
+     * @param cellHeight:   height of each panel (painting plus label)
+     * @param bufferBudget: bytes of buffers (images and particles) panels out of view may keep
+     * @param seasons:      seasons of the panels, repeated in order
+     */
+    public CollageWallPanel(int rows, int columns, int cellWidth, int cellHeight,
+                            long bufferBudget, String... seasons) {
+        super(null);
+        if (rows <= 0 || columns <= 0 || seasons.length == 0) {
+            throw new IllegalArgumentException("a wall needs at least one row, column and season");
+        }
+        for (String season : seasons) {
+            //Fail now on unknown seasons rather than when they scroll into view
+            ThemeRegistry.get(season);
+        }
+        this.rows = rows;
+        this.columns = columns;
+        this.cellWidth = cellWidth;
+        this.cellHeight = cellHeight;
+        this.bufferBudget = bufferBudget;
+        this.seasons = seasons.clone();
+
+        setPreferredSize(new Dimension(columns * cellWidth, rows * cellHeight));
+    }
+
+    /**
+     * Starts following the scroll position of the enclosing viewport.
+     */
+    public void addNotify() {
+        super.addNotify();
+        viewport = (JViewport) SwingUtilities.getAncestorOfClass(JViewport.class, this);
+        if (viewport != null) {
+            viewport.addChangeListener(viewportListener);
+        }
+        updateShownCells();
+    }
+
+    public void removeNotify() {
+        if (viewport != null) {
+            viewport.removeChangeListener(viewportListener);
+            viewport = null;
+        }
+        super.removeNotify();
+    }
+
+    /**
+     * Adds the panels that scrolled into view (creating any that do not
+     * exist yet), removes the ones that scrolled out of view and then
+     * keeps the image buffers within budget.
+     */
+    private void updateShownCells() {
+        Rectangle visible = getVisibleRect();
+        int firstColumn = Math.max(0, visible.x / cellWidth);
+        int firstRow = Math.max(0, visible.y / cellHeight);
+        int lastColumn = Math.min(columns, (visible.x + visible.width + cellWidth - 1) / cellWidth);
+        int lastRow = Math.min(rows, (visible.y + visible.height + cellHeight - 1) / cellHeight);
+        Rectangle inView = new Rectangle(firstColumn, firstRow,
+                Math.max(0, lastColumn - firstColumn), Math.max(0, lastRow - firstRow));
+        if (inView.equals(shownCells) && getComponentCount() > 0) {
+            return;
+        }
+
+        //Remove panels that are no longer in view
+        for (Component cell : getComponents()) {
+            int column = cell.getX() / cellWidth;
+            int row = cell.getY() / cellHeight;
+            if (!inView.contains(column, row)) {
+                remove(cell);
+            }
+        }
+
+        //Add the panels now in view
+        for (int row = inView.y; row < inView.y + inView.height; row++) {
+            for (int column = inView.x; column < inView.x + inView.width; column++) {
+                int index = row * columns + column;
+                JPanel cell = cells.computeIfAbsent(index, this::createCell);
+                if (cell.getParent() != this) {
+                    cell.setBounds(column * cellWidth, row * cellHeight, cellWidth, cellHeight);
+                    add(cell);
+                }
+                recentlyShown.put(index, paintings.get(index));
+            }
+        }
+        shownCells.setBounds(inView);
+
+        releaseBuffersOverBudget();
+        revalidate();
+        repaint();
+    }
+
+    /**
+     * Creates the panel at an index: a painting of its season and a label.
+     *
+     * @param index: row * columns + column
+     * @return the panel
+     */
+    private JPanel createCell(int index) {
+        String season = seasons[index % seasons.length];
+        TreePainting painting = new TreePainting(ThemeRegistry.get(season));
+        if (painting.getTheme().hasParticles()) {
+            painting.setParticlesEnabled(true);
+        }
+        paintings.put(index, painting);
+
+        JLabel label = new JLabel(painting.getTheme().getLabel(), SwingConstants.CENTER);
+        label.setBorder(labelBorder);
+        label.setFont(boldFont);
+
+        JPanel cell = new JPanel(new BorderLayout());
+        cell.add(painting, BorderLayout.CENTER);
+        cell.add(label, BorderLayout.SOUTH);
+        return cell;
+    }
+
+    /**
+     * Releases the buffers of panels out of view, least recently
+     * in view first, until all buffers fit in the budget.
+     */
+    private void releaseBuffersOverBudget() {
+        long total = 0;
+        for (TreePainting painting : recentlyShown.values()) {
+            total += painting.getBufferBytes();
+        }
+
+        Iterator<Map.Entry<Integer, TreePainting>> eldest = recentlyShown.entrySet().iterator();
+        while (total > bufferBudget && eldest.hasNext()) {
+            Map.Entry<Integer, TreePainting> entry = eldest.next();
+            int index = entry.getKey();
+            if (shownCells.contains(index % columns, index / columns)) {
+                continue;
+            }
+            TreePainting painting = entry.getValue();
+            total -= painting.getBufferBytes();
+            painting.releaseBuffers();
+            eldest.remove();
+        }
+    }
+
+    /**
+     * @return the number of panels created so far
+     */
+    public int getCreatedPanelCount() {
+        return cells.size();
+    }
+
+    /**
+     * @return the bytes of buffers (images and particles) currently held by the panels
+     */
+    public long getBufferBytes() {
+        long total = 0;
+        for (TreePainting painting : paintings.values()) {
+            total += painting.getBufferBytes();
+        }
+        return total;
+    }
+
+    /**
+     * Methods below are required by the Scrollable interface
+     */
+
+    public Dimension getPreferredScrollableViewportSize() {
+        Dimension size = getPreferredSize();
+        return new Dimension(Math.min(size.width, 5 * cellWidth), Math.min(size.height, cellHeight));
+    }
+
+    public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return (orientation == SwingConstants.VERTICAL ? cellHeight : cellWidth) / 10;
+    }
+
+    public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+        return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+    }
+
+    public boolean getScrollableTracksViewportWidth() {
+        return false;
+    }
+
+    public boolean getScrollableTracksViewportHeight() {
+        return false;
+    }
+}
@@ -0,0 +1,214 @@
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.BasicStroke;
+import javax.swing.Timer;
+import java.awt.geom.Arc2D;
+
+/**
+ * DragPreview draws the live preview of the trunk being dragged on a
+ * TreePainting: the trunk itself and, as a cheap stand-in for the tree,
+ * the outline of the area its branches can reach. It is drawn straight
+ * on the screen, on top of the painting, so moving it never re-renders
+ * the painting; only the areas of the previous and the current preview
+ * are repainted.
+ * <p>
+ * Drag events are coalesced to at most one frame per PREVIEW_FRAME_MILLIS,
+ * and the input-to-pixel latency of every frame is measured.
+ *
+ * @author: Sabirah Shuaybi
+ */
+class DragPreview {
+
+    /**
+     * At most one preview frame per this many milliseconds (60 per second),
+     * and the thin stroke of the preview's canopy outline
+     **/
+    private static final int PREVIEW_FRAME_MILLIS = 1000 / 60;
+    private static final BasicStroke PREVIEW_OUTLINE_STROKE = new BasicStroke(1);
+
+    private final TreePainting painting;
+
+    /**
+     * Where the trunk being dragged starts and currently ends, the area
+     * last painted for it and whether it is showing
+     **/
+    private boolean showing;
+    private double startX;
+    private double startY;
+    private double endX;
+    private double endY;
+    private Rectangle region;
+
+    /**
+     * Trunk stroke, scaled like the painting's view
+     **/
+    private BasicStroke trunkStroke = TreePainting.getSegmentStroke(0);
+
+    /**
+     * Shows a frame that had to wait for the previous one to be over
+     **/
+    private final Timer frameTimer;
+    private long lastFrameNanos;
+
+    /**
+     * Input-to-pixel latency: when the oldest drag event not yet on
+     * screen arrived, and the latency of the latest and slowest frames
+     **/
+    private long pendingEventNanos;
+    private long latencyNanos;
+    private long maxLatencyNanos;
+
+    /**
+     * @param painting: the painting the preview is drawn on
+     */
+    DragPreview(TreePainting painting) {
+        this.painting = painting;
+        frameTimer = new Timer(PREVIEW_FRAME_MILLIS, e -> showFrame());
+        frameTimer.setRepeats(false);
+    }
+
+    boolean isShowing() {
+        return showing;
+    }
+
+    /**
+     * Scales the trunk like the painting's view.
+     *
+     * @param scale: panel pixels per unit of model coordinates
+     */
+    void setViewScale(double scale) {
+        trunkStroke = new BasicStroke((float) (TreePainting.TRUNK_WIDTH * scale));
+    }
+
+    /**
+     * Moves the end of the previewed trunk to a drag event. Shows a frame
+     * right away unless one was shown less than a frame ago; then the
+     * timer shows the latest position once the frame is over.
+     *
+     * @param x1: x coordinate on the panel at which the trunk starts
+     * @param y1: y coordinate on the panel at which the trunk starts
+     * @param x2: x coordinate on the panel of the drag event
+     * @param y2: y coordinate on the panel of the drag event
+     */
+    void dragTo(double x1, double y1, double x2, double y2) {
+        showing = true;
+        startX = x1;
+        startY = y1;
+        endX = x2;
+        endY = y2;
+        if (pendingEventNanos == 0) {
+            pendingEventNanos = System.nanoTime();
+        }
+
+        long sinceLastFrame = System.nanoTime() - lastFrameNanos;
+        if (sinceLastFrame >= PREVIEW_FRAME_MILLIS * 1_000_000L) {
+            showFrame();
+        } else if (!frameTimer.isRunning()) {
+            frameTimer.setInitialDelay(PREVIEW_FRAME_MILLIS - (int) (sinceLastFrame / 1_000_000));
+            frameTimer.start();
+        }
+    }
+
+    /**
+     * Erases the preview.
+     */
+    void hide() {
+        showing = false;
+        frameTimer.stop();
+        showFrame();
+    }
+
+    /**
+     * Draws the preview, if it is showing.
+     *
+     * @param g: The graphics object to draw on
+     */
+    void paint(Graphics g) {
+        if (!showing) {
+            return;
+        }
+        Graphics2D g2d = (Graphics2D) g;
+        g2d.setColor(painting.getTheme().getBranchColor());
+        g2d.setStroke(trunkStroke);
+        g2d.drawLine((int) startX, (int) startY, (int) endX, (int) endY);
+
+        g2d.setStroke(PREVIEW_OUTLINE_STROKE);
+        g2d.draw(getCanopyOutline());
+
+        //The events this frame shows are now on screen
+        if (pendingEventNanos != 0) {
+            latencyNanos = System.nanoTime() - pendingEventNanos;
+            maxLatencyNanos = Math.max(maxLatencyNanos, latencyNanos);
+            pendingEventNanos = 0;
+        }
+    }
+
+    /**
+     * @return how long the latest frame took to reach the screen
+     * after the oldest drag event it shows, in nanoseconds
+     */
+    long getLatencyNanos() {
+        return latencyNanos;
+    }
+
+    /**
+     * @return the slowest latency so far, in nanoseconds
+     */
+    long getMaxLatencyNanos() {
+        return maxLatencyNanos;
+    }
+
+    /**
+     * Method that computes the outline of the area the branches of a tree
+     * with the previewed trunk can reach: a pie slice around the trunk
+     * direction whose radius is the combined length of one branch of each level.
+     *
+     * @return the outline of the reachable area
+     */
+    private Arc2D.Double getCanopyOutline() {
+        TreeGenerator generator = painting.getTreeGenerator();
+        double branchLength = Math.hypot(endX - startX, endY - startY) / TreePainting.GOLDEN_RATIO;
+        double reach = 0;
+        for (int level = 0; level < generator.getDepth(); level++) {
+            reach += branchLength / Math.pow(TreePainting.GOLDEN_RATIO, level);
+        }
+
+        //Every level may turn up to the cone's angle further away from the trunk
+        double spread = Math.min(Math.PI, generator.getDepth() * generator.getBranchCone());
+        double trunkAngle = TreeGenerator.getTrunkAngle(startX, startY, endX, endY);
+
+        //Arc2D angles are in degrees and counterclockwise on screen (y points down)
+        return new Arc2D.Double(endX - reach, endY - reach, 2 * reach, 2 * reach,
+                Math.toDegrees(-trunkAngle - spread), Math.toDegrees(2 * spread), Arc2D.PIE);
+    }
+
+    /**
+     * Method that computes the area covered by the preview.
+     *
+     * @return bounding box of everything paint draws
+     */
+    private Rectangle getBounds() {
+        Rectangle bounds = getCanopyOutline().getBounds();
+        bounds.add(startX, startY);
+        int margin = (int) Math.ceil(trunkStroke.getLineWidth());
+        bounds.grow(margin, margin);
+        return bounds;
+    }
+
+    /**
+     * Repaints only the areas of the previous and the current preview.
+     */
+    private void showFrame() {
+        lastFrameNanos = System.nanoTime();
+
+        Rectangle newRegion = showing ? getBounds() : null;
+        if (region != null) {
+            painting.repaint(region);
+        }
+        if (newRegion != null) {
+            painting.repaint(newRegion);
+        }
+        region = newRegion;
+    }
+}
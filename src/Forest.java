@@ -0,0 +1,309 @@
+import java.awt.Rectangle;
+import java.util.Map;
+import java.util.List;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.TreeMap;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+
+/**
+ * Forest holds every tree painted on one panel, in the order they were
+ * planted, together with a spatial index over their bounding boxes.
+ * The index is a uniform grid: each cell lists the trees whose bounding
+ * box overlaps it, so finding the trees in an area (for a partial
+ * repaint) or under a point (for hit-testing) only looks at the trees
+ * near that area, however many trees the forest holds.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class Forest {
+
+    /**
+     * Side of a grid cell in pixels
+     **/
+    private static final int CELL_SIZE = 64;
+
+    /**
+     * Trees overlapping each grid cell
+     **/
+    private final Map<Cell, List<Entry>> cells = new HashMap<>();
+
+    /**
+     * Looks cells up without allocating a key (see probe)
+     **/
+    private final Cell probe = new Cell(0, 0);
+
+    /**
+     * Every tree, both by identity and in planting order
+     **/
+    private final Map<TreeModel, Entry> entries = new IdentityHashMap<>();
+    private final TreeMap<Long, Entry> plantingOrder = new TreeMap<>();
+
+    private long nextSequence;
+
+    /**
+     * Incremented by every query, so trees overlapping several
+     * visited cells are only reported once
+     **/
+    private int queryMark;
+
+    /**
+     * The entries found by the current query, kept between queries
+     **/
+    private Entry[] found = new Entry[16];
+
+    /**
+     * Adds a tree on top of all the others.
+     *
+     * @param tree:   the tree to add
+     * @param bounds: area covered by the tree when painted
+     */
+    public void add(TreeModel tree, Rectangle bounds) {
+        if (entries.containsKey(tree)) {
+            return;
+        }
+        Entry entry = new Entry(tree, new Rectangle(bounds), nextSequence++);
+        entries.put(tree, entry);
+        plantingOrder.put(entry.sequence, entry);
+
+        for (int row = firstCell(bounds.y); row <= lastCell(bounds.y, bounds.height); row++) {
+            for (int col = firstCell(bounds.x); col <= lastCell(bounds.x, bounds.width); col++) {
+                cells.computeIfAbsent(new Cell(col, row), key -> new ArrayList<>()).add(entry);
+            }
+        }
+    }
+
+    /**
+     * Removes a tree.
+     *
+     * @param tree: the tree to remove
+     * @return the area the tree covered, or null if it is not in the forest
+     */
+    public Rectangle remove(TreeModel tree) {
+        Entry entry = entries.remove(tree);
+        if (entry == null) {
+            return null;
+        }
+        plantingOrder.remove(entry.sequence);
+
+        Rectangle bounds = entry.bounds;
+        for (int row = firstCell(bounds.y); row <= lastCell(bounds.y, bounds.height); row++) {
+            for (int col = firstCell(bounds.x); col <= lastCell(bounds.x, bounds.width); col++) {
+                List<Entry> cell = cells.get(probe(col, row));
+                cell.remove(entry);
+                if (cell.isEmpty()) {
+                    cells.remove(probe);
+                }
+            }
+        }
+        return new Rectangle(bounds);
+    }
+
+    /**
+     * Removes every tree.
+     */
+    public void clear() {
+        cells.clear();
+        entries.clear();
+        plantingOrder.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    /**
+     * @return the most recently planted tree, or null if the forest is empty
+     */
+    public TreeModel getNewest() {
+        Map.Entry<Long, Entry> newest = plantingOrder.lastEntry();
+        return newest == null ? null : newest.getValue().tree;
+    }
+
+    /**
+     * @return every tree, in planting order
+     */
+    public List<TreeModel> getTrees() {
+        List<TreeModel> trees = new ArrayList<>(entries.size());
+        for (Entry entry : plantingOrder.values()) {
+            trees.add(entry.tree);
+        }
+        return trees;
+    }
+
+    /**
+     * @param tree: a tree of the forest
+     * @return the area the tree covers, or null if it is not in the forest
+     */
+    public Rectangle getBounds(TreeModel tree) {
+        Entry entry = entries.get(tree);
+        return entry == null ? null : new Rectangle(entry.bounds);
+    }
+
+    /**
+     * Finds the trees whose bounding boxes overlap an area.
+     *
+     * @param area: the area to search
+     * @return the overlapping trees, in planting order (bottom to top)
+     */
+    public List<TreeModel> query(Rectangle area) {
+        List<TreeModel> trees = new ArrayList<>();
+        query(area, trees);
+        return trees;
+    }
+
+    /**
+     * Finds the trees whose bounding boxes overlap an area, into a list
+     * the caller reuses, so that a repaint allocates nothing.
+     *
+     * @param area:  the area to search
+     * @param trees: cleared, then filled with the overlapping trees
+     *               in planting order (bottom to top)
+     */
+    public void query(Rectangle area, List<TreeModel> trees) {
+        trees.clear();
+        int mark = ++queryMark;
+        int count = 0;
+
+        for (int row = firstCell(area.y); row <= lastCell(area.y, area.height); row++) {
+            for (int col = firstCell(area.x); col <= lastCell(area.x, area.width); col++) {
+                List<Entry> cell = cells.get(probe(col, row));
+                if (cell == null) {
+                    continue;
+                }
+                for (int i = 0; i < cell.size(); i++) {
+                    Entry entry = cell.get(i);
+                    if (entry.mark != mark && entry.bounds.intersects(area)) {
+                        entry.mark = mark;
+                        if (count == found.length) {
+                            found = Arrays.copyOf(found, count * 2);
+                        }
+                        found[count++] = entry;
+                    }
+                }
+            }
+        }
+
+        sortByPlantingOrder(found, count);
+        for (int i = 0; i < count; i++) {
+            trees.add(found[i].tree);
+            found[i] = null;
+        }
+    }
+
+    /**
+     * Finds the topmost tree whose bounding box contains a point.
+     *
+     * @param x: x coordinate of the point
+     * @param y: y coordinate of the point
+     * @return the most recently planted tree under the point, or null
+     */
+    public TreeModel treeAt(int x, int y) {
+        List<Entry> cell = cells.get(probe(Math.floorDiv(x, CELL_SIZE), Math.floorDiv(y, CELL_SIZE)));
+        if (cell == null) {
+            return null;
+        }
+        Entry top = null;
+        for (Entry entry : cell) {
+            if (entry.bounds.contains(x, y) && (top == null || entry.sequence > top.sequence)) {
+                top = entry;
+            }
+        }
+        return top == null ? null : top.tree;
+    }
+
+    /**
+     * Sorts entries by planting order in place (a heap sort,
+     * which unlike List.sort never allocates a merge buffer).
+     *
+     * @param entries: the entries to sort
+     * @param count:   number of entries at the start of the array to sort
+     */
+    private static void sortByPlantingOrder(Entry[] entries, int count) {
+        for (int i = count / 2 - 1; i >= 0; i--) {
+            siftDown(entries, i, count);
+        }
+        for (int end = count - 1; end > 0; end--) {
+            Entry top = entries[0];
+            entries[0] = entries[end];
+            entries[end] = top;
+            siftDown(entries, 0, end);
+        }
+    }
+
+    private static void siftDown(Entry[] heap, int i, int count) {
+        Entry entry = heap[i];
+        int child;
+        while ((child = 2 * i + 1) < count) {
+            if (child + 1 < count && heap[child + 1].sequence > heap[child].sequence) {
+                child++;
+            }
+            if (heap[child].sequence <= entry.sequence) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = entry;
+    }
+
+    private static int firstCell(int start) {
+        return Math.floorDiv(start, CELL_SIZE);
+    }
+
+    private static int lastCell(int start, int length) {
+        return Math.floorDiv(start + Math.max(length, 1) - 1, CELL_SIZE);
+    }
+
+    /**
+     * @return the probe key, set to the given cell (valid until the next call)
+     */
+    private Cell probe(int col, int row) {
+        probe.col = col;
+        probe.row = row;
+        return probe;
+    }
+
+    /**
+     * Column and row of a grid cell. Keys stored in the grid are never
+     * changed; only the probe is, to look cells up without boxing a key.
+     **/
+    private static final class Cell {
+        private int col;
+        private int row;
+
+        Cell(int col, int row) {
+            this.col = col;
+            this.row = row;
+        }
+
+        public int hashCode() {
+            return 31 * col + row;
+        }
+
+        public boolean equals(Object other) {
+            return other instanceof Cell && ((Cell) other).col == col && ((Cell) other).row == row;
+        }
+    }
+
+    /**
+     * A tree, the area it covers and its position in planting order
+     **/
+    private static final class Entry {
+        private final TreeModel tree;
+        private final Rectangle bounds;
+        private final long sequence;
+        private int mark;
+
+        Entry(TreeModel tree, Rectangle bounds, long sequence) {
+            this.tree = tree;
+            this.bounds = bounds;
+            this.sequence = sequence;
+        }
+    }
+}
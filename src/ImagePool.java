@@ -0,0 +1,124 @@
+import java.util.Map;
+import java.util.Iterator;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.awt.image.BufferedImage;
+
+/**
+ * ImagePool hands out reusable BufferedImages, one free list per panel
+ * size, so that rendering many paintings of the same size does not
+ * allocate a new image for each one. Images are not cleared when they
+ * are reused; the painting's background covers the whole image.
+ * <p>
+ * The free images together never take more than a fixed number of
+ * bytes: when a release would go over it, the images of the sizes
+ * used least recently are dropped first, and an image larger than
+ * the whole budget is never kept.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class ImagePool {
+
+    /**
+     * Free images keyed by (width << 32 | height), least recently used size first
+     **/
+    private final Map<Long, ArrayDeque<BufferedImage>> freeImages = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * Maximum number of free images kept per size
+     **/
+    private final int maxFreePerSize;
+
+    /**
+     * Maximum number of bytes taken by all free images together
+     **/
+    private final long maxPooledBytes;
+
+    /**
+     * Bytes taken by the free images
+     **/
+    private long pooledBytes;
+
+    /**
+     * @param maxFreePerSize: maximum number of free images kept per size
+     * @param maxPooledBytes: maximum number of bytes taken by all free images together
+     */
+    public ImagePool(int maxFreePerSize, long maxPooledBytes) {
+        this.maxFreePerSize = maxFreePerSize;
+        this.maxPooledBytes = maxPooledBytes;
+    }
+
+    /**
+     * Takes a free image of the given size from the pool,
+     * or creates one if there is none.
+     *
+     * @param width:  width of the image
+     * @param height: height of the image
+     * @return an image whose old contents are undefined
+     */
+    public synchronized BufferedImage acquire(int width, int height) {
+        ArrayDeque<BufferedImage> free = freeImages.get(sizeKey(width, height));
+        if (free != null && !free.isEmpty()) {
+            pooledBytes -= getBytes(width, height);
+            return free.pop();
+        }
+        return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+    }
+
+    /**
+     * Gives an image back to the pool for reuse. The image is dropped
+     * if its size already has enough free images or it is larger than
+     * the pool's whole budget.
+     *
+     * @param image: an image from acquire that is no longer used
+     */
+    public synchronized void release(BufferedImage image) {
+        long bytes = getBytes(image.getWidth(), image.getHeight());
+        if (bytes > maxPooledBytes) {
+            return;
+        }
+        ArrayDeque<BufferedImage> free = freeImages.computeIfAbsent(
+                sizeKey(image.getWidth(), image.getHeight()), key -> new ArrayDeque<>());
+        if (free.size() < maxFreePerSize) {
+            free.push(image);
+            pooledBytes += bytes;
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    /**
+     * @return the number of bytes taken by the free images
+     */
+    public synchronized long getPooledBytes() {
+        return pooledBytes;
+    }
+
+    /**
+     * Drops free images, least recently used size first,
+     * until the pool is back within its budget.
+     */
+    private void evictLeastRecentlyUsed() {
+        Iterator<Map.Entry<Long, ArrayDeque<BufferedImage>>> sizes = freeImages.entrySet().iterator();
+        while (pooledBytes > maxPooledBytes && sizes.hasNext()) {
+            ArrayDeque<BufferedImage> free = sizes.next().getValue();
+            while (pooledBytes > maxPooledBytes && !free.isEmpty()) {
+                BufferedImage image = free.removeLast();
+                pooledBytes -= getBytes(image.getWidth(), image.getHeight());
+            }
+            if (free.isEmpty()) {
+                sizes.remove();
+            }
+        }
+    }
+
+    /**
+     * @return the bytes taken by a TYPE_INT_RGB image of the given size
+     */
+    private static long getBytes(int width, int height) {
+        return (long) width * height * Integer.BYTES;
+    }
+
+    private static long sizeKey(int width, int height) {
+        return ((long) width << 32) | (height & 0xffffffffL);
+    }
+}
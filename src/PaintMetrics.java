@@ -0,0 +1,182 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * PaintMetrics records how long one TreePainting spends painting: a
+ * histogram of whole paintComponent durations, the total time spent on
+ * the backdrop, the branches and the leaves, how many trees and branches
+ * were generated, and how many bytes painting allocated.
+ * <p>
+ * The painting records from the event dispatch thread while JMX clients
+ * read from their own threads, so all counters are atomic.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class PaintMetrics implements PaintMetricsMBean {
+
+    /**
+     * JMX domain the metrics of every painting are registered under
+     **/
+    public static final String JMX_DOMAIN = "SeasonalTreePainting";
+
+    /**
+     * System property that turns on the on-screen metrics overlay
+     * (java -Dtreepainting.metrics.overlay=true ...)
+     **/
+    public static final String OVERLAY_PROPERTY = "treepainting.metrics.overlay";
+
+    /**
+     * Number of paint duration buckets (the last one
+     * holds every paint of about a second or more)
+     **/
+    private static final int HISTOGRAM_BUCKETS = 22;
+
+    private static final com.sun.management.ThreadMXBean THREADS = getThreadBean();
+
+    private final AtomicLong paintCount = new AtomicLong();
+    private final AtomicLong paintNanos = new AtomicLong();
+    private final AtomicLong maxPaintNanos = new AtomicLong();
+    private final AtomicLongArray histogram = new AtomicLongArray(HISTOGRAM_BUCKETS);
+
+    private final AtomicLong backgroundNanos = new AtomicLong();
+    private final AtomicLong branchNanos = new AtomicLong();
+    private final AtomicLong leafNanos = new AtomicLong();
+
+    private final AtomicLong treesGenerated = new AtomicLong();
+    private final AtomicLong branchesGenerated = new AtomicLong();
+
+    private final AtomicLong allocatedBytes = new AtomicLong();
+
+    /**
+     * Registers these metrics with the platform MBean server, replacing
+     * any metrics already registered under the same name. Metrics are
+     * optional, so a failure is only reported, not thrown.
+     *
+     * @param name: name of the painting (e.g. its season)
+     */
+    public void register(String name) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName objectName = new ObjectName(JMX_DOMAIN + ":type=PaintMetrics,name=" + ObjectName.quote(name));
+            if (server.isRegistered(objectName)) {
+                server.unregisterMBean(objectName);
+            }
+            server.registerMBean(this, objectName);
+        } catch (JMException e) {
+            System.err.println("Could not register paint metrics for " + name + ": " + e);
+        }
+    }
+
+    /**
+     * @return the bytes allocated so far by the calling thread,
+     * or 0 if the JVM cannot tell
+     */
+    static long currentThreadAllocatedBytes() {
+        return THREADS == null ? 0 : THREADS.getCurrentThreadAllocatedBytes();
+    }
+
+    void recordPaint(long nanos, long allocated) {
+        paintCount.incrementAndGet();
+        paintNanos.addAndGet(nanos);
+        maxPaintNanos.accumulateAndGet(nanos, Math::max);
+        allocatedBytes.addAndGet(allocated);
+
+        //Bucket by the number of binary digits of the duration in microseconds
+        long micros = nanos / 1000;
+        int bucket = Math.min(64 - Long.numberOfLeadingZeros(micros), HISTOGRAM_BUCKETS - 1);
+        histogram.incrementAndGet(bucket);
+    }
+
+    void recordBackground(long nanos) {
+        backgroundNanos.addAndGet(nanos);
+    }
+
+    void recordBranches(long nanos) {
+        branchNanos.addAndGet(nanos);
+    }
+
+    void recordLeaves(long nanos) {
+        leafNanos.addAndGet(nanos);
+    }
+
+    void recordTreeGenerated(long branches) {
+        treesGenerated.incrementAndGet();
+        branchesGenerated.addAndGet(branches);
+    }
+
+    public long getPaintCount() {
+        return paintCount.get();
+    }
+
+    public double getAveragePaintMillis() {
+        long count = paintCount.get();
+        return count == 0 ? 0 : paintNanos.get() / 1e6 / count;
+    }
+
+    public double getMaxPaintMillis() {
+        return maxPaintNanos.get() / 1e6;
+    }
+
+    public long[] getPaintHistogram() {
+        long[] counts = new long[HISTOGRAM_BUCKETS];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = histogram.get(i);
+        }
+        return counts;
+    }
+
+    public double getBackgroundMillis() {
+        return backgroundNanos.get() / 1e6;
+    }
+
+    public double getBranchMillis() {
+        return branchNanos.get() / 1e6;
+    }
+
+    public double getLeafMillis() {
+        return leafNanos.get() / 1e6;
+    }
+
+    public long getTreesGenerated() {
+        return treesGenerated.get();
+    }
+
+    public long getBranchesGenerated() {
+        return branchesGenerated.get();
+    }
+
+    public long getAllocatedBytes() {
+        return allocatedBytes.get();
+    }
+
+    public void reset() {
+        paintCount.set(0);
+        paintNanos.set(0);
+        maxPaintNanos.set(0);
+        for (int i = 0; i < HISTOGRAM_BUCKETS; i++) {
+            histogram.set(i, 0);
+        }
+        backgroundNanos.set(0);
+        branchNanos.set(0);
+        leafNanos.set(0);
+        treesGenerated.set(0);
+        branchesGenerated.set(0);
+        allocatedBytes.set(0);
+    }
+
+    private static com.sun.management.ThreadMXBean getThreadBean() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) bean;
+            if (threads.isThreadAllocatedMemorySupported()) {
+                threads.setThreadAllocatedMemoryEnabled(true);
+                return threads;
+            }
+        }
+        return null;
+    }
+}
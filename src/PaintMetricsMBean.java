@@ -0,0 +1,36 @@
+/**
+ * PaintMetricsMBean is the JMX management interface of PaintMetrics:
+ * paint timings and counters of one TreePainting, readable from
+ * jconsole or any other JMX client while the application runs.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public interface PaintMetricsMBean {
+
+    long getPaintCount();
+
+    double getAveragePaintMillis();
+
+    double getMaxPaintMillis();
+
+    /**
+     * @return number of paints per duration bucket: bucket 0 counts paints
+     * under 1 microsecond, bucket i paints from 2^(i-1) to 2^i microseconds,
+     * and the last bucket everything slower
+     */
+    long[] getPaintHistogram();
+
+    double getBackgroundMillis();
+
+    double getBranchMillis();
+
+    double getLeafMillis();
+
+    long getTreesGenerated();
+
+    long getBranchesGenerated();
+
+    long getAllocatedBytes();
+
+    void reset();
+}
@@ -0,0 +1,81 @@
+import java.awt.Color;
+import java.util.SplittableRandom;
+
+/**
+ * Palette is a fixed, shared set of colors (e.g. all the leaf colors a
+ * season can pick). The Color objects are created once, up front, so
+ * picking a color or looking one up by its RGB value never allocates.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class Palette {
+
+    private final Color[] colors;
+
+    /**
+     * Open addressing table from RGB value to color
+     * (sized to a power of two at least twice the number of colors)
+     **/
+    private final int[] tableRgb;
+    private final Color[] tableColors;
+
+    /**
+     * @param colors: the colors of the palette, at least one
+     */
+    public Palette(Color... colors) {
+        if (colors.length == 0) {
+            throw new IllegalArgumentException("a palette needs at least one color");
+        }
+        this.colors = colors.clone();
+
+        int tableSize = Integer.highestOneBit(colors.length * 2 - 1) << 1;
+        tableRgb = new int[tableSize];
+        tableColors = new Color[tableSize];
+        for (Color color : colors) {
+            int slot = findSlot(color.getRGB());
+            tableRgb[slot] = color.getRGB();
+            tableColors[slot] = color;
+        }
+    }
+
+    public int size() {
+        return colors.length;
+    }
+
+    public Color get(int index) {
+        return colors[index];
+    }
+
+    /**
+     * A palette of one color draws nothing from the stream, so trees of
+     * single-color seasons grow the same branches from the same seed.
+     *
+     * @param random: random stream to pick the color with
+     * @return a color of the palette, each equally likely
+     */
+    public Color random(SplittableRandom random) {
+        return colors.length == 1 ? colors[0] : colors[random.nextInt(colors.length)];
+    }
+
+    /**
+     * Looks up the palette's color with the given RGB value.
+     *
+     * @param rgb: an RGB value as returned by Color.getRGB
+     * @return the shared color, or null if the palette has no such color
+     */
+    public Color lookup(int rgb) {
+        return tableColors[findSlot(rgb)];
+    }
+
+    /**
+     * @return the slot holding rgb, or the empty slot where it would go
+     */
+    private int findSlot(int rgb) {
+        int mask = tableRgb.length - 1;
+        int slot = (rgb * 0x9E3779B9) >>> 16 & mask;
+        while (tableColors[slot] != null && tableRgb[slot] != rgb) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+}
@@ -0,0 +1,126 @@
+import java.awt.Graphics;
+import java.util.SplittableRandom;
+import javax.swing.Timer;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+
+/**
+ * ParticleLayer animates the falling particles (leaves, snowflakes,
+ * petals) of a TreePainting at about 60 frames per second: every frame
+ * the painting emits new particles (see TreePainting.emitParticles),
+ * all particles are advanced and the painting is repainted. The
+ * particles are drawn into one transparent image the size of the
+ * painting, which is copied over it.
+ * <p>
+ * The particles' arrays grow as particles are emitted, up to the
+ * capacity the layer was created with, and can be freed together with
+ * the image while the painting is not shown (see release).
+ *
+ * @author: Sabirah Shuaybi
+ */
+class ParticleLayer {
+
+    private final TreePainting painting;
+    private final ParticleSystem particles;
+
+    private final Timer frameTimer;
+    private long lastFrameNanos;
+    private final SplittableRandom random = new SplittableRandom();
+
+    /**
+     * Transparent image the particles are drawn into, and its pixels
+     **/
+    private BufferedImage layer;
+    private int[] pixels;
+
+    /**
+     * @param painting: the painting the particles fall on
+     * @param capacity: maximum number of live particles
+     */
+    ParticleLayer(TreePainting painting, int capacity) {
+        this.painting = painting;
+        particles = new ParticleSystem(capacity);
+        frameTimer = new Timer(TreePainting.PARTICLE_FRAME_MILLIS, e -> step());
+        frameTimer.setCoalesce(true);
+    }
+
+    /**
+     * Starts (or resumes) the animation.
+     */
+    void start() {
+        if (!frameTimer.isRunning()) {
+            lastFrameNanos = System.nanoTime();
+            frameTimer.start();
+        }
+    }
+
+    /**
+     * Pauses the animation; the particles stay where they are.
+     */
+    void stop() {
+        frameTimer.stop();
+    }
+
+    /**
+     * Frees the particles and the image; falling particles are
+     * dropped and new ones start falling with the next frame.
+     */
+    void release() {
+        particles.release();
+        layer = null;
+        pixels = null;
+    }
+
+    /**
+     * @return the bytes taken by the particles and the image
+     */
+    long getBytes() {
+        long bytes = particles.getBytes();
+        if (layer != null) {
+            bytes += 4L * layer.getWidth() * layer.getHeight();
+        }
+        return bytes;
+    }
+
+    /**
+     * Draws the particles into the transparent image and copies the
+     * image onto the painting. Does nothing while there are no particles.
+     *
+     * @param g:      The graphics object to draw on
+     * @param width:  width of the painting
+     * @param height: height of the painting
+     */
+    void paint(Graphics g, int width, int height) {
+        if (particles.size() == 0 || width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (layer == null || layer.getWidth() != width || layer.getHeight() != height) {
+            layer = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+            pixels = ((DataBufferInt) layer.getRaster().getDataBuffer()).getData();
+        }
+
+        particles.render(pixels, width, height, TreePainting.PARTICLE_SIZE);
+        g.drawImage(layer, 0, 0, null);
+    }
+
+    /**
+     * Emits new particles, advances all particles by the time since
+     * the last frame and repaints if there is anything to show.
+     */
+    private void step() {
+        long now = System.nanoTime();
+        //Cap the step so a stalled timer does not make particles jump
+        float dt = Math.min((now - lastFrameNanos) / 1e9f, 0.1f);
+        lastFrameNanos = now;
+
+        boolean wasEmpty = particles.size() == 0;
+        painting.emitParticles(particles, random);
+        particles.update(dt, TreePainting.PARTICLE_GRAVITY, TreePainting.PARTICLE_DRAG,
+                TreePainting.getFloorY(painting.getHeight()));
+
+        if (!(wasEmpty && particles.size() == 0)) {
+            painting.repaint();
+        }
+    }
+}
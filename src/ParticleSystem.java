@@ -0,0 +1,217 @@
+import java.util.Arrays;
+
+/**
+ * ParticleSystem simulates many small falling particles (leaves,
+ * snowflakes, petals) stored as a struct of arrays: one primitive array
+ * per attribute instead of one object per particle. The arrays act as
+ * the pool: spawning fills the next free slot and a particle that
+ * expires is replaced by the last live one, so no objects are created
+ * while the system runs. The arrays start small and double whenever
+ * they are full, up to the capacity, so a system only takes the memory
+ * its particles actually need.
+ * <p>
+ * Particles fall under gravity with air drag until they reach the
+ * floor, where they come to rest until their life runs out.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class ParticleSystem {
+
+    /**
+     * Number of slots the arrays get when they are first needed
+     **/
+    private static final int INITIAL_SLOTS = 256;
+
+    /**
+     * Bytes taken by one slot: five floats and an int
+     **/
+    private static final int BYTES_PER_SLOT = 6 * 4;
+
+    private float[] x = new float[0];
+    private float[] y = new float[0];
+    private float[] vx = new float[0];
+    private float[] vy = new float[0];
+    private float[] life = new float[0];
+    private int[] rgb = new int[0];
+
+    /**
+     * Maximum number of live particles
+     **/
+    private final int capacity;
+
+    /**
+     * Number of live particles, which occupy slots 0 to count - 1
+     **/
+    private int count;
+
+    /**
+     * @param capacity: maximum number of live particles
+     */
+    public ParticleSystem(int capacity) {
+        this.capacity = capacity;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * @return the maximum number of live particles
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    /**
+     * @return the bytes taken by the arrays
+     */
+    public long getBytes() {
+        return (long) BYTES_PER_SLOT * x.length;
+    }
+
+    /**
+     * Removes every particle.
+     */
+    public void clear() {
+        count = 0;
+    }
+
+    /**
+     * Removes every particle and frees the arrays; they grow
+     * again as new particles are spawned.
+     */
+    public void release() {
+        count = 0;
+        resize(0);
+    }
+
+    /**
+     * Adds a particle if there is room for it.
+     *
+     * @param px:   x coordinate
+     * @param py:   y coordinate
+     * @param pvx:  horizontal speed in pixels per second
+     * @param pvy:  vertical speed in pixels per second (positive is down)
+     * @param pRgb: RGB color
+     * @param pLife: seconds until the particle disappears
+     * @return false if the system is full
+     */
+    public boolean spawn(float px, float py, float pvx, float pvy, int pRgb, float pLife) {
+        if (count == x.length) {
+            if (count == capacity) {
+                return false;
+            }
+            resize(Math.min(Math.max(2 * count, INITIAL_SLOTS), capacity));
+        }
+        x[count] = px;
+        y[count] = py;
+        vx[count] = pvx;
+        vy[count] = pvy;
+        rgb[count] = pRgb;
+        life[count] = pLife;
+        count++;
+        return true;
+    }
+
+    /**
+     * Moves the live particles into arrays with the given number of slots.
+     *
+     * @param slots: new length of the arrays, at least the number of live particles
+     */
+    private void resize(int slots) {
+        x = Arrays.copyOf(x, slots);
+        y = Arrays.copyOf(y, slots);
+        vx = Arrays.copyOf(vx, slots);
+        vy = Arrays.copyOf(vy, slots);
+        life = Arrays.copyOf(life, slots);
+        rgb = Arrays.copyOf(rgb, slots);
+    }
+
+    /**
+     * Advances every particle by one time step. The integration loops
+     * are plain element-wise array arithmetic, which the JIT can vectorize.
+     *
+     * @param dt:      length of the time step in seconds
+     * @param gravity: downward acceleration in pixels per second squared
+     * @param drag:    fraction of the velocity lost to air per second
+     * @param floorY:  y coordinate of the floor particles land on
+     */
+    public void update(float dt, float gravity, float drag, float floorY) {
+        int n = count;
+        float damping = Math.max(0, 1 - drag * dt);
+        float fall = gravity * dt;
+
+        for (int i = 0; i < n; i++) {
+            vx[i] = vx[i] * damping;
+            vy[i] = vy[i] * damping + fall;
+        }
+        for (int i = 0; i < n; i++) {
+            x[i] += vx[i] * dt;
+            y[i] = Math.min(y[i] + vy[i] * dt, floorY);
+            life[i] -= dt;
+        }
+
+        //Particles that reached the floor stop there
+        for (int i = 0; i < n; i++) {
+            if (y[i] == floorY) {
+                vx[i] = 0;
+                vy[i] = 0;
+            }
+        }
+
+        removeExpired();
+    }
+
+    /**
+     * Removes particles whose life has run out by moving
+     * the last live particle into their slot.
+     */
+    private void removeExpired() {
+        int i = 0;
+        while (i < count) {
+            if (life[i] <= 0) {
+                count--;
+                x[i] = x[count];
+                y[i] = y[count];
+                vx[i] = vx[count];
+                vy[i] = vy[count];
+                rgb[i] = rgb[count];
+                life[i] = life[count];
+            } else {
+                i++;
+            }
+        }
+    }
+
+    /**
+     * Draws every particle as a small opaque square straight into an ARGB
+     * pixel array (e.g. the DataBufferInt of a TYPE_INT_ARGB image), so that
+     * all particles reach the screen with a single image copy. The array
+     * is cleared to transparent first.
+     *
+     * @param pixels: ARGB pixels, row by row
+     * @param width:  width of the pixel array
+     * @param height: height of the pixel array
+     * @param size:   side of each particle's square in pixels
+     */
+    public void render(int[] pixels, int width, int height, int size) {
+        Arrays.fill(pixels, 0, width * height, 0);
+
+        for (int i = 0; i < count; i++) {
+            int left = (int) x[i];
+            int top = (int) y[i] - size;
+            int argb = 0xff000000 | rgb[i];
+
+            int x0 = Math.max(left, 0);
+            int x1 = Math.min(left + size, width);
+            int y0 = Math.max(top, 0);
+            int y1 = Math.min(top + size, height);
+            for (int row = y0; row < y1; row++) {
+                int offset = row * width;
+                for (int col = x0; col < x1; col++) {
+                    pixels[offset + col] = argb;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,113 @@
+/**
+ * RenderJob describes one painting to render without a display:
+ * the season, the trunk, the seed the tree is grown from and the
+ * size of the panel.
+ * <p>
+ * Jobs are written one per line as
+ * <pre>
+ *     season x1 y1 x2 y2 seed [width height]
+ * </pre>
+ * where season names a theme of the ThemeRegistry (standard, winter,
+ * spring, summer, fall or any theme added to its configuration).
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class RenderJob {
+
+    /**
+     * Panel size used when a job does not give one (the size paintings
+     * are designed for, with the floor at TreePainting.Y_COORD_FLOOR)
+     **/
+    public static final int DEFAULT_WIDTH = TreePainting.REFERENCE_WIDTH;
+    public static final int DEFAULT_HEIGHT = TreePainting.REFERENCE_HEIGHT;
+
+    private final String season;
+    private final double x1;
+    private final double y1;
+    private final double x2;
+    private final double y2;
+    private final long seed;
+    private final int width;
+    private final int height;
+
+    public RenderJob(String season, double x1, double y1, double x2, double y2, long seed,
+                     int width, int height) {
+        if (width <= 0 || height <= 0) {
+            throw new IllegalArgumentException("panel size must be positive: " + width + "x" + height);
+        }
+        this.season = season;
+        this.x1 = x1;
+        this.y1 = y1;
+        this.x2 = x2;
+        this.y2 = y2;
+        this.seed = seed;
+        this.width = width;
+        this.height = height;
+    }
+
+    /**
+     * Parses one job line.
+     *
+     * @param line: the job, as "season x1 y1 x2 y2 seed [width height]"
+     * @return the parsed job
+     * @throws IllegalArgumentException if the line is not a valid job
+     */
+    public static RenderJob parse(String line) {
+        String[] fields = line.trim().split("\\s+");
+        if (fields.length != 6 && fields.length != 8) {
+            throw new IllegalArgumentException("expected \"season x1 y1 x2 y2 seed [width height]\": " + line);
+        }
+
+        try {
+            int width = fields.length == 8 ? Integer.parseInt(fields[6]) : DEFAULT_WIDTH;
+            int height = fields.length == 8 ? Integer.parseInt(fields[7]) : DEFAULT_HEIGHT;
+            return new RenderJob(fields[0],
+                    Double.parseDouble(fields[1]), Double.parseDouble(fields[2]),
+                    Double.parseDouble(fields[3]), Double.parseDouble(fields[4]),
+                    Long.parseLong(fields[5]), width, height);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("invalid number in job: " + line, e);
+        }
+    }
+
+    /**
+     * @param line: a line of a job file
+     * @return true if the line is blank or a # comment
+     */
+    public static boolean isComment(String line) {
+        String trimmed = line.trim();
+        return trimmed.isEmpty() || trimmed.startsWith("#");
+    }
+
+    public String getSeason() {
+        return season;
+    }
+
+    public double getX1() {
+        return x1;
+    }
+
+    public double getY1() {
+        return y1;
+    }
+
+    public double getX2() {
+        return x2;
+    }
+
+    public double getY2() {
+        return y2;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+}
@@ -0,0 +1,223 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.BufferedReader;
+import java.util.List;
+import java.util.ArrayList;
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * RenderPipeline streams a (possibly huge) list of render jobs through
+ * three overlapping stages connected by bounded queues:
+ * <ol>
+ *     <li>parsing job lines (on the calling thread),</li>
+ *     <li>generating the tree geometry (generator threads),</li>
+ *     <li>rasterizing the painting and encoding the PNG, or streaming
+ *     it out as SVG or a scene file (rasterizer threads).</li>
+ * </ol>
+ * A full queue blocks the stage feeding it, so only a bounded number of
+ * jobs and trees are in memory at once however long the job list is.
+ * Rasterizers draw into images borrowed from an ImagePool.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class RenderPipeline {
+
+    /**
+     * Marks the end of the job stream in a queue
+     **/
+    private static final Item END = new Item(-1, null);
+
+    /**
+     * Maximum number of bytes of free images kept for reuse
+     **/
+    private static final long MAX_POOLED_BYTES = 256L << 20;
+
+    private final BatchRenderer renderer;
+    private final int generatorThreads;
+    private final int rasterizerThreads;
+
+    private final BlockingQueue<Item> parsed;
+    private final BlockingQueue<Item> generated;
+    private final ImagePool images;
+
+    private final AtomicLong rendered = new AtomicLong();
+    private final AtomicLong failed = new AtomicLong();
+
+    /**
+     * @param renderer:          renders and names each painting
+     * @param generatorThreads:  number of threads generating trees
+     * @param rasterizerThreads: number of threads rasterizing and encoding paintings
+     * @param queueCapacity:     maximum number of jobs waiting between two stages
+     */
+    public RenderPipeline(BatchRenderer renderer, int generatorThreads, int rasterizerThreads,
+                          int queueCapacity) {
+        this.renderer = renderer;
+        this.generatorThreads = generatorThreads;
+        this.rasterizerThreads = rasterizerThreads;
+        this.parsed = new ArrayBlockingQueue<>(queueCapacity);
+        this.generated = new ArrayBlockingQueue<>(queueCapacity);
+        //One image per rasterizer is all that is ever in use at once
+        this.images = new ImagePool(rasterizerThreads, MAX_POOLED_BYTES);
+    }
+
+    /**
+     * Renders every job read from the reader, one job per line
+     * (blank lines and # comments are skipped). Returns once every
+     * painting has been written.
+     *
+     * @param jobs: source of job lines
+     * @return the number of jobs that failed
+     * @throws IOException          if the jobs cannot be read
+     * @throws InterruptedException if interrupted while waiting for the stages
+     */
+    public long run(BufferedReader jobs) throws IOException, InterruptedException {
+        List<Thread> generators = startThreads("generator", generatorThreads, this::generate);
+        List<Thread> rasterizers = startThreads("rasterizer", rasterizerThreads, this::rasterize);
+
+        try {
+            parse(jobs);
+        } finally {
+            //Let each stage drain its queue and stop
+            for (int i = 0; i < generatorThreads; i++) {
+                parsed.put(END);
+            }
+            joinAll(generators);
+            for (int i = 0; i < rasterizerThreads; i++) {
+                generated.put(END);
+            }
+            joinAll(rasterizers);
+        }
+
+        return failed.get();
+    }
+
+    /**
+     * @return the number of paintings written so far
+     */
+    public long getRendered() {
+        return rendered.get();
+    }
+
+    /**
+     * Stage 1: parses job lines and queues them for generation.
+     */
+    private void parse(BufferedReader jobs) throws IOException, InterruptedException {
+        long index = 0;
+        String line;
+        while ((line = jobs.readLine()) != null) {
+            if (RenderJob.isComment(line)) {
+                continue;
+            }
+            try {
+                parsed.put(new Item(index, RenderJob.parse(line)));
+            } catch (IllegalArgumentException e) {
+                fail(index, e);
+            }
+            index++;
+        }
+    }
+
+    /**
+     * Stage 2: generates the tree of each parsed job. Anything a job
+     * throws only fails that job, so the stage keeps taking jobs and
+     * the parser is never left blocked on a full queue.
+     */
+    private void generate() throws InterruptedException {
+        Item item;
+        while ((item = parsed.take()) != END) {
+            try {
+                item.tree = renderer.generateTree(item.job);
+                generated.put(item);
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Throwable e) {
+                fail(item.index, e);
+            }
+        }
+    }
+
+    /**
+     * Stage 3: paints each generated tree into a pooled image
+     * and writes the image to its PNG file (SVG and scene output need no image).
+     * Like generation, anything a job throws only fails that job.
+     */
+    private void rasterize() throws InterruptedException {
+        Item item;
+        while ((item = generated.take()) != END) {
+            RenderJob job = item.job;
+            if (!renderer.isRasterized()) {
+                try {
+                    renderer.export(job, item.tree, renderer.getOutputFile(item.index, job));
+                    rendered.incrementAndGet();
+                } catch (Throwable e) {
+                    fail(item.index, e);
+                }
+                continue;
+            }
+
+            BufferedImage image = images.acquire(job.getWidth(), job.getHeight());
+            try {
+                renderer.render(job, item.tree, image);
+                File file = renderer.getOutputFile(item.index, job);
+                ImageIO.write(image, "png", file);
+                rendered.incrementAndGet();
+            } catch (Throwable e) {
+                fail(item.index, e);
+            } finally {
+                images.release(image);
+            }
+        }
+    }
+
+    private void fail(long index, Throwable e) {
+        failed.incrementAndGet();
+        System.err.println("job " + index + " failed: " + e);
+    }
+
+    /**
+     * A stage's work loop
+     **/
+    private interface Stage {
+        void run() throws InterruptedException;
+    }
+
+    private static List<Thread> startThreads(String name, int count, Stage stage) {
+        List<Thread> threads = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            Thread thread = new Thread(() -> {
+                try {
+                    stage.run();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }, name + "-" + i);
+            thread.start();
+            threads.add(thread);
+        }
+        return threads;
+    }
+
+    private static void joinAll(List<Thread> threads) throws InterruptedException {
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * A job travelling through the pipeline
+     **/
+    private static final class Item {
+        private final long index;
+        private final RenderJob job;
+        private TreeModel tree;
+
+        Item(long index, RenderJob job) {
+            this.index = index;
+            this.job = job;
+        }
+    }
+}
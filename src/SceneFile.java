@@ -0,0 +1,297 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collection;
+
+/**
+ * SceneFile saves and loads a painting's forest in a compact, versioned
+ * binary format made of fixed-width little-endian records:
+ * <pre>
+ *     header     (40 bytes)  magic "TSCN", version, width, height,
+ *                            number of trees, 0, season (16 ASCII bytes)
+ *     directory  (48 bytes per tree)  data offset, seed, number of
+ *                            segments, number of leaves, leaf size,
+ *                            bounding box (min x, min y, max x, max y), 0
+ *     tree data  (per tree, 8-byte aligned)  segment end points
+ *                            (4 floats each), leaf centers (2 floats
+ *                            each), leaf colors (RGB ints), segment
+ *                            depths (bytes)
+ * </pre>
+ * Opening a scene only maps its header and directory. Each tree's data
+ * is memory-mapped when the tree is asked for and the returned TreeModel
+ * reads its segments and leaves straight from the mapping, so painting
+ * a loaded tree iterates over the mapped file with no parsing or copying.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class SceneFile implements Closeable {
+
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'T', 'S', 'C', 'N'};
+
+    private static final int HEADER_SIZE = 40;
+    private static final int SEASON_SIZE = 16;
+    private static final int DIRECTORY_RECORD_SIZE = 48;
+
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+
+    private final FileChannel channel;
+    private final ByteBuffer directory;
+
+    private final int width;
+    private final int height;
+    private final int numTrees;
+    private final String season;
+
+    private SceneFile(FileChannel channel, ByteBuffer directory, int width, int height,
+                      int numTrees, String season) {
+        this.channel = channel;
+        this.directory = directory;
+        this.width = width;
+        this.height = height;
+        this.numTrees = numTrees;
+        this.season = season;
+    }
+
+    /**
+     * Writes a scene file, streaming the trees through one small buffer.
+     *
+     * @param file:   the file to write
+     * @param season: season of the painting (name of its theme, see ThemeRegistry)
+     * @param width:  width of the painting
+     * @param height: height of the painting
+     * @param trees:  the trees, in planting order
+     * @throws IOException if the file cannot be written
+     */
+    public static void write(Path file, String season, int width, int height,
+                             Collection<TreeModel> trees) throws IOException {
+        byte[] seasonBytes = season.getBytes(StandardCharsets.US_ASCII);
+        if (seasonBytes.length > SEASON_SIZE) {
+            throw new IllegalArgumentException("season name too long: " + season);
+        }
+
+        try (FileChannel out = FileChannel.open(file, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocateDirect(WRITE_BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+
+            buffer.put(MAGIC).putInt(VERSION).putInt(width).putInt(height).putInt(trees.size()).putInt(0);
+            buffer.put(seasonBytes).put(new byte[SEASON_SIZE - seasonBytes.length]);
+
+            //Every tree's offset follows from the sizes of the trees before it
+            long offset = HEADER_SIZE + (long) DIRECTORY_RECORD_SIZE * trees.size();
+            for (TreeModel tree : trees) {
+                ensureRemaining(out, buffer, DIRECTORY_RECORD_SIZE);
+                buffer.putLong(offset).putLong(tree.getSeed())
+                        .putInt(tree.getNumSegments()).putInt(tree.getNumLeaves())
+                        .putFloat(tree.getLeafSize())
+                        .putFloat(tree.getMinX()).putFloat(tree.getMinY())
+                        .putFloat(tree.getMaxX()).putFloat(tree.getMaxY())
+                        .putInt(0);
+                offset += getDataSize(tree.getNumSegments(), tree.getNumLeaves());
+            }
+
+            for (TreeModel tree : trees) {
+                writeTreeData(out, buffer, tree);
+            }
+            flush(out, buffer);
+        }
+    }
+
+    /**
+     * Opens a scene file. Only the header and the tree directory are
+     * read; trees are mapped one by one by getTree.
+     *
+     * @param file: the file to open
+     * @return the open scene
+     * @throws IOException if the file cannot be read or is not a scene file
+     */
+    public static SceneFile open(Path file) throws IOException {
+        FileChannel channel = FileChannel.open(file, StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException("not a tree scene file: " + file);
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            for (byte b : MAGIC) {
+                if (header.get() != b) {
+                    throw new IOException("not a tree scene file: " + file);
+                }
+            }
+            int version = header.getInt();
+            if (version != VERSION) {
+                throw new IOException("unsupported scene file version " + version + ": " + file);
+            }
+            int width = header.getInt();
+            int height = header.getInt();
+            int numTrees = header.getInt();
+            header.getInt();
+
+            byte[] seasonBytes = new byte[SEASON_SIZE];
+            header.get(seasonBytes);
+            int seasonLength = 0;
+            while (seasonLength < SEASON_SIZE && seasonBytes[seasonLength] != 0) {
+                seasonLength++;
+            }
+            String season = new String(seasonBytes, 0, seasonLength, StandardCharsets.US_ASCII);
+
+            long directorySize = (long) DIRECTORY_RECORD_SIZE * numTrees;
+            if (numTrees < 0 || HEADER_SIZE + directorySize > channel.size()) {
+                throw new IOException("truncated scene file: " + file);
+            }
+            ByteBuffer directory = channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, directorySize)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+
+            return new SceneFile(channel, directory, width, height, numTrees, season);
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getSeason() {
+        return season;
+    }
+
+    public int getNumTrees() {
+        return numTrees;
+    }
+
+    /**
+     * Maps one tree of the scene. The tree reads its geometry straight
+     * from the mapped file, and stays usable after the scene is closed.
+     * Each call maps the tree anew, so callers should keep the tree.
+     *
+     * @param index: position of the tree in planting order (0 to getNumTrees() - 1)
+     * @return the tree
+     * @throws IndexOutOfBoundsException if there is no tree at the index
+     * @throws IOException if the tree's data lies outside the file
+     *                     or a branch depth is out of range
+     */
+    public TreeModel getTree(int index) throws IOException {
+        if (index < 0 || index >= numTrees) {
+            throw new IndexOutOfBoundsException("tree " + index + " does not exist: the scene has "
+                    + numTrees + " trees");
+        }
+        int record = index * DIRECTORY_RECORD_SIZE;
+        long offset = directory.getLong(record);
+        long seed = directory.getLong(record + 8);
+        int numSegments = directory.getInt(record + 16);
+        int numLeaves = directory.getInt(record + 20);
+        float leafSize = directory.getFloat(record + 24);
+        float minX = directory.getFloat(record + 28);
+        float minY = directory.getFloat(record + 32);
+        float maxX = directory.getFloat(record + 36);
+        float maxY = directory.getFloat(record + 40);
+
+        long size = getDataSize(numSegments, numLeaves);
+        if (numSegments < 0 || numLeaves < 0 || offset < 0 || offset + size > channel.size()) {
+            throw new IOException("tree " + index + " lies outside the scene file");
+        }
+        ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+
+        int leavesStart = 16 * numSegments;
+        int colorsStart = leavesStart + 8 * numLeaves;
+        int depthsStart = colorsStart + 4 * numLeaves;
+        ByteBuffer depths = slice(data, depthsStart, numSegments);
+        //Depths pick the segment's stroke, so they are checked once here rather than on every paint
+        for (int i = 0; i < numSegments; i++) {
+            if (depths.get(i) < 0) {
+                throw new IOException("tree " + index + " has a branch depth out of range (0 to "
+                        + Byte.MAX_VALUE + "): " + (depths.get(i) & 0xff));
+            }
+        }
+        return new TreeModel(
+                slice(data, 0, leavesStart).asFloatBuffer(),
+                depths,
+                slice(data, leavesStart, 8 * numLeaves).asFloatBuffer(),
+                slice(data, colorsStart, 4 * numLeaves).asIntBuffer(),
+                leafSize, seed, minX, minY, maxX, maxY);
+    }
+
+    /**
+     * Loads every tree of the scene into a painting, replacing its forest.
+     *
+     * @param painting: the painting to show the scene in
+     * @throws IOException if a tree cannot be mapped
+     */
+    public void loadInto(TreePainting painting) throws IOException {
+        painting.clearTrees();
+        //The trees are in the coordinates of the painting they were saved from
+        painting.setModelSize(width, height);
+        for (int i = 0; i < numTrees; i++) {
+            painting.addTree(getTree(i));
+        }
+    }
+
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    /**
+     * @return bytes of tree data for a tree of this size, padded to a multiple of 8
+     */
+    private static long getDataSize(int numSegments, int numLeaves) {
+        long size = 16L * numSegments + 8L * numLeaves + 4L * numLeaves + numSegments;
+        return (size + 7) & ~7L;
+    }
+
+    private static ByteBuffer slice(ByteBuffer data, int start, int length) {
+        //Slices start out big-endian, so the byte order is set on each one
+        return data.duplicate().position(start).limit(start + length).slice().order(ByteOrder.LITTLE_ENDIAN);
+    }
+
+    private static void writeTreeData(FileChannel out, ByteBuffer buffer, TreeModel tree) throws IOException {
+        for (int i = 0; i < tree.getNumSegments(); i++) {
+            ensureRemaining(out, buffer, 16);
+            buffer.putFloat(tree.getSegmentX1(i)).putFloat(tree.getSegmentY1(i))
+                    .putFloat(tree.getSegmentX2(i)).putFloat(tree.getSegmentY2(i));
+        }
+        for (int i = 0; i < tree.getNumLeaves(); i++) {
+            ensureRemaining(out, buffer, 8);
+            buffer.putFloat(tree.getLeafX(i)).putFloat(tree.getLeafY(i));
+        }
+        for (int i = 0; i < tree.getNumLeaves(); i++) {
+            ensureRemaining(out, buffer, 4);
+            buffer.putInt(tree.getLeafColor(i));
+        }
+        for (int i = 0; i < tree.getNumSegments(); i++) {
+            ensureRemaining(out, buffer, 1);
+            buffer.put((byte) tree.getSegmentDepth(i));
+        }
+
+        //Pad so the next tree's floats are aligned again
+        int written = (int) (16L * tree.getNumSegments() + 12L * tree.getNumLeaves() + tree.getNumSegments());
+        int padding = (int) (getDataSize(tree.getNumSegments(), tree.getNumLeaves()) - written);
+        ensureRemaining(out, buffer, padding);
+        buffer.put(new byte[padding]);
+    }
+
+    private static void ensureRemaining(FileChannel out, ByteBuffer buffer, int bytes) throws IOException {
+        if (buffer.remaining() < bytes) {
+            flush(out, buffer);
+        }
+    }
+
+    private static void flush(FileChannel out, ByteBuffer buffer) throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+        buffer.clear();
+    }
+}
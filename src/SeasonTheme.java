@@ -0,0 +1,330 @@
+import java.awt.Color;
+import java.util.Properties;
+
+/**
+ * SeasonTheme describes everything that sets one season's paintings
+ * apart: the backdrop and floor colors, the color of trunk and branches,
+ * the palette leaves are colored from, how deep and wide trees branch
+ * and which particles (snow, petals, leaves) fall. TreePainting paints
+ * any theme, so a new season is a new theme rather than a new subclass.
+ * <p>
+ * Themes are immutable and are created once, when ThemeRegistry reads
+ * them from its configuration; their palettes are built up front so
+ * painting never creates Color objects.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public final class SeasonTheme {
+
+    /**
+     * Where falling particles start: nowhere, anywhere along the
+     * top of the panel, or at a random leaf of the tree
+     **/
+    public enum ParticleSource { NONE, SKY, LEAVES }
+
+    /**
+     * The standard, non seasonal theme: green leaves on a black
+     * backdrop with a gray floor, no particles
+     **/
+    public static final SeasonTheme STANDARD = new SeasonTheme("standard", "No Season",
+            Color.BLACK, new Color(76, 70, 72), TreePainting.LIGHT_BROWN, new Palette(Color.GREEN),
+            1, TreePainting.NUM_BRANCHES, ParticleSource.NONE, 0, 0, 0, 0, 0, 0, null);
+
+    private final String name;
+    private final String label;
+    private final Color backdropColor;
+    private final Color floorColor;
+    private final Color branchColor;
+    private final Palette leafPalette;
+    private final int depth;
+    private final int branchingFactor;
+
+    private final ParticleSource particleSource;
+    private final double particleRate;
+    private final float particleLife;
+    private final float minParticleSpeedX;
+    private final float maxParticleSpeedX;
+    private final float minParticleSpeedY;
+    private final float maxParticleSpeedY;
+
+    /**
+     * Color of the particles, or null for the color of the leaf they fall from
+     **/
+    private final Color particleColor;
+
+    private SeasonTheme(String name, String label, Color backdropColor, Color floorColor,
+                        Color branchColor, Palette leafPalette, int depth, int branchingFactor,
+                        ParticleSource particleSource, double particleRate, float particleLife,
+                        float minParticleSpeedX, float maxParticleSpeedX,
+                        float minParticleSpeedY, float maxParticleSpeedY, Color particleColor) {
+        this.name = name;
+        this.label = label;
+        this.backdropColor = backdropColor;
+        this.floorColor = floorColor;
+        this.branchColor = branchColor;
+        this.leafPalette = leafPalette;
+        this.depth = depth;
+        this.branchingFactor = branchingFactor;
+        this.particleSource = particleSource;
+        this.particleRate = particleRate;
+        this.particleLife = particleLife;
+        this.minParticleSpeedX = minParticleSpeedX;
+        this.maxParticleSpeedX = maxParticleSpeedX;
+        this.minParticleSpeedY = minParticleSpeedY;
+        this.maxParticleSpeedY = maxParticleSpeedY;
+        this.particleColor = particleColor;
+    }
+
+    /**
+     * Reads one theme from "name.key = value" entries (see themes.properties
+     * for the keys). Keys that are left out take the standard theme's value.
+     *
+     * @param name:       name of the theme, and prefix of its keys
+     * @param properties: the configuration to read the theme from
+     * @return the theme
+     * @throws IllegalArgumentException if an entry of the theme is malformed
+     */
+    public static SeasonTheme fromProperties(String name, Properties properties) {
+        String prefix = name + ".";
+        String label = properties.getProperty(prefix + "label",
+                Character.toUpperCase(name.charAt(0)) + name.substring(1));
+
+        Color backdrop = readColor(properties, prefix + "backdrop", STANDARD.backdropColor);
+        Color floor = readColor(properties, prefix + "floor", STANDARD.floorColor);
+        Color branches = readColor(properties, prefix + "branches", STANDARD.branchColor);
+
+        String leaves = properties.getProperty(prefix + "leaves");
+        Palette palette = leaves == null ? STANDARD.leafPalette : parsePalette(prefix + "leaves", leaves.trim());
+
+        int depth = readInt(properties, prefix + "depth", STANDARD.depth);
+        int branching = readInt(properties, prefix + "branching", STANDARD.branchingFactor);
+        if (depth < 1 || depth > Byte.MAX_VALUE) {
+            throw new IllegalArgumentException(prefix + "depth must be between 1 and "
+                    + Byte.MAX_VALUE + ": " + depth);
+        }
+        //The trunk and one level of branches must fit into the generator's branch budget
+        if (branching < 1 || branching > TreeGenerator.DEFAULT_MAX_SEGMENTS - 1) {
+            throw new IllegalArgumentException(prefix + "branching must be between 1 and "
+                    + (TreeGenerator.DEFAULT_MAX_SEGMENTS - 1) + ": " + branching);
+        }
+
+        String source = properties.getProperty(prefix + "particles", "none").trim();
+        ParticleSource particleSource;
+        try {
+            particleSource = ParticleSource.valueOf(source.toUpperCase());
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException(prefix + "particles must be none, sky or leaves: " + source);
+        }
+
+        double rate = readDouble(properties, prefix + "particles.rate", 0);
+        float life = (float) readDouble(properties, prefix + "particles.life", 0);
+        float[] speedX = readRange(properties, prefix + "particles.speedX");
+        float[] speedY = readRange(properties, prefix + "particles.speedY");
+        if (rate < 0 || life < 0) {
+            throw new IllegalArgumentException(prefix + "particles.rate and .life must not be negative");
+        }
+
+        //"leaf" lets each particle keep the color of the leaf it falls from
+        String color = properties.getProperty(prefix + "particles.color", "leaf").trim();
+        Color particleColor = color.equals("leaf") ? null : parseColor(prefix + "particles.color", color);
+
+        return new SeasonTheme(name, label, backdrop, floor, branches, palette, depth, branching,
+                particleSource, rate, life, speedX[0], speedX[1], speedY[0], speedY[1], particleColor);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * @return the name shown to the user, e.g. under a collage panel
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    public Color getBackdropColor() {
+        return backdropColor;
+    }
+
+    public Color getFloorColor() {
+        return floorColor;
+    }
+
+    public Color getBranchColor() {
+        return branchColor;
+    }
+
+    /**
+     * @return every color a leaf of this theme may have
+     */
+    public Palette getLeafPalette() {
+        return leafPalette;
+    }
+
+    /**
+     * @return levels of branches grown off the trunk
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return branches grown off every branch of the level above
+     */
+    public int getBranchingFactor() {
+        return branchingFactor;
+    }
+
+    public ParticleSource getParticleSource() {
+        return particleSource;
+    }
+
+    /**
+     * @return true if particles of this theme ever fall
+     */
+    public boolean hasParticles() {
+        return particleSource != ParticleSource.NONE && particleRate > 0 && particleLife > 0;
+    }
+
+    /**
+     * @return particles emitted per frame; the fraction is the
+     * chance per frame of emitting one more
+     */
+    public double getParticleRate() {
+        return particleRate;
+    }
+
+    /**
+     * @return how long a particle lasts (in seconds)
+     */
+    public float getParticleLife() {
+        return particleLife;
+    }
+
+    public float getMinParticleSpeedX() {
+        return minParticleSpeedX;
+    }
+
+    public float getMaxParticleSpeedX() {
+        return maxParticleSpeedX;
+    }
+
+    public float getMinParticleSpeedY() {
+        return minParticleSpeedY;
+    }
+
+    public float getMaxParticleSpeedY() {
+        return maxParticleSpeedY;
+    }
+
+    /**
+     * @return the color of the particles, or null if each particle
+     * has the color of the leaf it fell from
+     */
+    public Color getParticleColor() {
+        return particleColor;
+    }
+
+    public String toString() {
+        return name;
+    }
+
+    /**
+     * Parses a leaf palette: colors separated by commas, or a range
+     * "#rrggbb..#rrggbb" of evenly spaced colors from one to the other,
+     * one for every step of the channel that changes the most.
+     *
+     * @param key:   the key the palette was read from, for error messages
+     * @param value: the palette
+     * @return the palette
+     */
+    private static Palette parsePalette(String key, String value) {
+        int range = value.indexOf("..");
+        if (range < 0) {
+            String[] names = value.split(",");
+            Color[] colors = new Color[names.length];
+            for (int i = 0; i < names.length; i++) {
+                colors[i] = parseColor(key, names[i].trim());
+            }
+            return new Palette(colors);
+        }
+
+        Color from = parseColor(key, value.substring(0, range).trim());
+        Color to = parseColor(key, value.substring(range + 2).trim());
+        int steps = Math.max(Math.abs(to.getRed() - from.getRed()),
+                Math.max(Math.abs(to.getGreen() - from.getGreen()), Math.abs(to.getBlue() - from.getBlue())));
+        Color[] colors = new Color[steps + 1];
+        for (int i = 0; i <= steps; i++) {
+            colors[i] = new Color(interpolate(from.getRed(), to.getRed(), i, steps),
+                    interpolate(from.getGreen(), to.getGreen(), i, steps),
+                    interpolate(from.getBlue(), to.getBlue(), i, steps));
+        }
+        return new Palette(colors);
+    }
+
+    private static int interpolate(int from, int to, int step, int steps) {
+        return steps == 0 ? from : from + Math.round((to - from) * (float) step / steps);
+    }
+
+    private static Color parseColor(String key, String value) {
+        try {
+            return Color.decode(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a color (#rrggbb): " + value);
+        }
+    }
+
+    private static Color readColor(Properties properties, String key, Color defaultColor) {
+        String value = properties.getProperty(key);
+        return value == null ? defaultColor : parseColor(key, value.trim());
+    }
+
+    private static int readInt(Properties properties, String key, int defaultValue) {
+        String value = properties.getProperty(key);
+        try {
+            return value == null ? defaultValue : Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a whole number: " + value);
+        }
+    }
+
+    private static double readDouble(Properties properties, String key, double defaultValue) {
+        String value = properties.getProperty(key);
+        double number;
+        try {
+            number = value == null ? defaultValue : Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a number: " + value);
+        }
+        //NaN and Infinity parse, but no rate or life can be either
+        if (!Double.isFinite(number)) {
+            throw new IllegalArgumentException(key + " is not a finite number: " + value);
+        }
+        return number;
+    }
+
+    /**
+     * @return the range "min..max" (or a single number) as {min, max},
+     * or {0, 0} if the key is missing
+     */
+    private static float[] readRange(Properties properties, String key) {
+        String value = properties.getProperty(key, "0").trim();
+        int range = value.indexOf("..", 1);
+        try {
+            float[] bounds = range < 0
+                    ? new float[]{Float.parseFloat(value), Float.parseFloat(value)}
+                    : new float[]{Float.parseFloat(value.substring(0, range).trim()),
+                                  Float.parseFloat(value.substring(range + 2).trim())};
+            if (!Float.isFinite(bounds[0]) || !Float.isFinite(bounds[1])) {
+                throw new IllegalArgumentException(key + " is not a finite range: " + value);
+            }
+            if (bounds[0] > bounds[1]) {
+                throw new IllegalArgumentException(key + " must go from low to high: " + value);
+            }
+            return bounds;
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(key + " is not a range (min..max): " + value);
+        }
+    }
+}
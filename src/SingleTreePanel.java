@@ -18,6 +18,17 @@ public class SingleTreePanel extends JPanel {
      * @param instructionsText: String of instructions to display
      **/
     public SingleTreePanel(String instructionsText) {
+        this(instructionsText, new TreePainting());
+    }
+
+    /**
+     * Constructor for a panel holding a given kind of TreePainting
+     * (e.g. an AnimatedTreePainting) in the CENTER region.
+     *
+     * @param instructionsText: String of instructions to display
+     * @param painting: the TreePainting to display
+     **/
+    public SingleTreePanel(String instructionsText, TreePainting painting) {
         // use a BorderLayout
         super(new BorderLayout());
 
@@ -26,7 +37,11 @@ public class SingleTreePanel extends JPanel {
         instructions.setHorizontalAlignment(JLabel.CENTER);
         add(instructions, BorderLayout.NORTH);
 
-        // use the rest of the panel for a TreePainting object
-        add(new TreePainting(), BorderLayout.CENTER);
+        // use the rest of the panel for the TreePainting object
+        add(painting, BorderLayout.CENTER);
+
+        // publish the painting's paint metrics over JMX
+        painting.getMetrics().register(painting.getClass().getSimpleName());
+        painting.setMetricsOverlayVisible(Boolean.getBoolean(PaintMetrics.OVERLAY_PROPERTY));
     }
 }
\ No newline at end of file
@@ -0,0 +1,267 @@
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.WritableByteChannel;
+import java.awt.geom.AffineTransform;
+
+/**
+ * SvgExporter writes a TreePainting as an SVG image. The SVG is streamed
+ * straight from the painting's tree models through one fixed-size buffer
+ * to an OutputStream or a channel (e.g. a FileChannel), so even trees
+ * with millions of segments export in constant memory.
+ * <p>
+ * The output matches what paintComponent draws (minus the transient
+ * particles and drag preview): the season's background, then every tree
+ * in planting order with its trunk and branches in the season's branch
+ * color at the widths of getSegmentStroke (TRUNK_WIDTH for the trunk,
+ * BRANCH_WIDTH for the branches out of it) and its leaves at the pixel
+ * positions paintLeaf uses.
+ * <p>
+ * An exporter reuses its buffer, so it must only be used by one thread at a time.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class SvgExporter {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Longest run of segments written into one path element
+     * (keeps path data a manageable size for SVG viewers)
+     **/
+    private static final int SEGMENTS_PER_PATH = 4096;
+
+    private static final byte[] HEX_DIGITS = "0123456789abcdef".getBytes();
+
+    private final TreePainting painting;
+
+    /**
+     * Direct, so writes to a FileChannel need no extra copy
+     **/
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+
+    private WritableByteChannel channel;
+
+    /**
+     * @param painting: the painting to export
+     */
+    public SvgExporter(TreePainting painting) {
+        this.painting = painting;
+    }
+
+    /**
+     * Writes the painting as SVG to a stream. The stream is left open.
+     *
+     * @param out:    stream to write to
+     * @param width:  width of the image
+     * @param height: height of the image
+     * @throws IOException if writing fails
+     */
+    public void export(OutputStream out, int width, int height) throws IOException {
+        export(Channels.newChannel(out), width, height);
+        out.flush();
+    }
+
+    /**
+     * Writes the painting as SVG to a channel. The channel is left open.
+     *
+     * @param channel: channel to write to
+     * @param width:   width of the image
+     * @param height:  height of the image
+     * @throws IOException if writing fails
+     */
+    public void export(WritableByteChannel channel, int width, int height) throws IOException {
+        this.channel = channel;
+        buffer.clear();
+        try {
+            append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n");
+            append("<svg xmlns=\"http://www.w3.org/2000/svg\" width=\"").append(width)
+                    .append("\" height=\"").append(height)
+                    .append("\" viewBox=\"0 0 ").append(width).append(' ').append(height).append("\">\n");
+
+            writeBackground(width, height);
+
+            //Trees are stored in model coordinates (see TreePainting.setModelSize)
+            AffineTransform view = painting.createViewTransform(width, height);
+            if (!view.isIdentity()) {
+                append("<g transform=\"matrix(").append((float) view.getScaleX()).append(" 0 0 ")
+                        .append((float) view.getScaleY()).append(' ').append((float) view.getTranslateX())
+                        .append(" 0)\">\n");
+            }
+            for (TreeModel tree : painting.getForest().getTrees()) {
+                writeTree(tree);
+            }
+            if (!view.isIdentity()) {
+                append("</g>\n");
+            }
+
+            append("</svg>\n");
+            flush();
+        } finally {
+            this.channel = null;
+        }
+    }
+
+    /**
+     * Writes the season's background as the two rectangles
+     * paintBackground fills: the backdrop over the whole image
+     * and the floor from getFloorY down.
+     *
+     * @param width:  width of the image
+     * @param height: height of the image
+     */
+    private void writeBackground(int width, int height) throws IOException {
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+        SeasonTheme theme = painting.getTheme();
+        writeRect(0, width, height, theme.getBackdropColor().getRGB());
+
+        int floorY = TreePainting.getFloorY(height);
+        writeRect(floorY, width, height - floorY, theme.getFloorColor().getRGB());
+    }
+
+    /**
+     * Writes one rectangle as wide as the image.
+     *
+     * @param y:      top of the rectangle
+     * @param width:  width of the image
+     * @param height: height of the rectangle
+     * @param rgb:    fill color
+     */
+    private void writeRect(int y, int width, int height, int rgb) throws IOException {
+        append("<rect x=\"0\" y=\"").append(y)
+                .append("\" width=\"").append(width).append("\" height=\"").append(height)
+                .append("\" fill=\"").appendColor(rgb).append("\"/>\n");
+    }
+
+    /**
+     * Writes the trunk, branches and leaves of one tree, in the order
+     * paintTree draws them: all segments, then all leaves on top.
+     *
+     * @param tree: the tree to write
+     */
+    private void writeTree(TreeModel tree) throws IOException {
+        //Java2D's BasicStroke defaults: square caps, mitered joins
+        append("<g stroke=\"").appendColor(painting.getTheme().getBranchColor().getRGB())
+                .append("\" stroke-linecap=\"square\" fill=\"none\">\n");
+        int pathDepth = -1;
+        int pathSegments = 0;
+        for (int i = 0; i < tree.getNumSegments(); i++) {
+            int depth = tree.getSegmentDepth(i);
+            if (depth != pathDepth || pathSegments == SEGMENTS_PER_PATH) {
+                if (pathDepth >= 0) {
+                    append("\"/>\n");
+                }
+                append("<path stroke-width=\"").append(TreePainting.getSegmentStroke(depth).getLineWidth())
+                        .append("\" d=\"");
+                pathDepth = depth;
+                pathSegments = 0;
+            }
+            append('M').append(tree.getSegmentX1(i)).append(' ').append(tree.getSegmentY1(i))
+                    .append('L').append(tree.getSegmentX2(i)).append(' ').append(tree.getSegmentY2(i));
+            pathSegments++;
+        }
+        if (pathDepth >= 0) {
+            append("\"/>\n");
+        }
+        append("</g>\n");
+
+        //Leaves are filled ovals at whole pixel positions, grouped by color
+        int leafSize = (int) tree.getLeafSize();
+        float radius = leafSize / 2f;
+        int groupColor = 0;
+        for (int i = 0; i < tree.getNumLeaves(); i++) {
+            int rgb = tree.getLeafColor(i);
+            if (i == 0 || rgb != groupColor) {
+                if (i > 0) {
+                    append("</g>\n");
+                }
+                append("<g fill=\"").appendColor(rgb).append("\">\n");
+                groupColor = rgb;
+            }
+            int left = (int) (tree.getLeafX(i) - tree.getLeafSize() / 2);
+            int top = (int) (tree.getLeafY(i) - tree.getLeafSize() / 2);
+            append("<ellipse cx=\"").append(left + radius).append("\" cy=\"").append(top + radius)
+                    .append("\" rx=\"").append(radius).append("\" ry=\"").append(radius).append("\"/>\n");
+        }
+        if (tree.getNumLeaves() > 0) {
+            append("</g>\n");
+        }
+    }
+
+    private SvgExporter append(String text) throws IOException {
+        for (int i = 0; i < text.length(); i++) {
+            append(text.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Appends one character. SVG output is all ASCII, so every
+     * character is a single byte.
+     */
+    private SvgExporter append(char c) throws IOException {
+        if (!buffer.hasRemaining()) {
+            flush();
+        }
+        buffer.put((byte) c);
+        return this;
+    }
+
+    private SvgExporter append(long value) throws IOException {
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        long divisor = 1;
+        while (value / divisor >= 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            append((char) ('0' + value / divisor % 10));
+        }
+        return this;
+    }
+
+    /**
+     * Appends a coordinate or width with at most two decimals
+     * (without building a String)
+     */
+    private SvgExporter append(float value) throws IOException {
+        long hundredths = Math.round(value * 100.0);
+        if (hundredths < 0) {
+            append('-');
+            hundredths = -hundredths;
+        }
+        append(hundredths / 100);
+        int fraction = (int) (hundredths % 100);
+        if (fraction != 0) {
+            append('.').append((char) ('0' + fraction / 10));
+            if (fraction % 10 != 0) {
+                append((char) ('0' + fraction % 10));
+            }
+        }
+        return this;
+    }
+
+    /**
+     * Appends an RGB color as #rrggbb
+     */
+    private SvgExporter appendColor(int rgb) throws IOException {
+        append('#');
+        for (int shift = 20; shift >= 0; shift -= 4) {
+            append((char) HEX_DIGITS[(rgb >> shift) & 0xF]);
+        }
+        return this;
+    }
+
+    private void flush() throws IOException {
+        buffer.flip();
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
@@ -0,0 +1,137 @@
+import java.io.Reader;
+import java.io.InputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.Set;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Properties;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+
+/**
+ * ThemeRegistry holds every SeasonTheme paintings can be created in,
+ * by name. The themes are read once, when the registry is first used:
+ * the built-in standard theme, then themes.properties from the class
+ * path and then, if the system property treepainting.themes names one,
+ * a file of extra themes. Each file lists its themes in a "themes" entry.
+ * The extra file's entries override the bundled ones key by key, so it
+ * can also change just one setting of an existing theme.
+ * <p>
+ * A season is added by adding its entries to a themes file; nothing
+ * has to be subclassed or wired into the collage.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class ThemeRegistry {
+
+    /**
+     * System property naming a file of extra themes
+     **/
+    public static final String THEMES_PROPERTY = "treepainting.themes";
+
+    private static final String THEMES_RESOURCE = "/themes.properties";
+
+    /**
+     * Every theme by name, in the order they were first defined
+     **/
+    private static final Map<String, SeasonTheme> themes = loadThemes();
+
+    /**
+     * @param name: name of the theme, e.g. standard, winter, spring, summer or fall
+     * @return the theme
+     * @throws IllegalArgumentException if there is no theme of that name
+     */
+    public static SeasonTheme get(String name) {
+        SeasonTheme theme = themes.get(name);
+        if (theme == null) {
+            throw new IllegalArgumentException("unknown season: " + name);
+        }
+        return theme;
+    }
+
+    /**
+     * @return every theme, in the order they were defined
+     */
+    public static List<SeasonTheme> getThemes() {
+        return new ArrayList<>(themes.values());
+    }
+
+    /**
+     * @return the names of every theme, in the order they were defined
+     */
+    public static String[] getNames() {
+        return themes.keySet().toArray(new String[0]);
+    }
+
+    /**
+     * Reads the built-in, bundled and extra themes.
+     *
+     * @return every theme by name
+     */
+    private static Map<String, SeasonTheme> loadThemes() {
+        //Every theme's entries, later files overriding earlier ones
+        Properties properties = new Properties();
+        Set<String> names = new LinkedHashSet<>();
+        String source = THEMES_RESOURCE;
+
+        try {
+            try (InputStream in = ThemeRegistry.class.getResourceAsStream(THEMES_RESOURCE)) {
+                if (in != null) {
+                    Properties bundled = new Properties();
+                    bundled.load(in);
+                    addEntries(properties, names, bundled, THEMES_RESOURCE);
+                }
+            }
+
+            String extra = System.getProperty(THEMES_PROPERTY);
+            if (extra != null) {
+                Properties entries = new Properties();
+                try (Reader in = Files.newBufferedReader(Paths.get(extra), StandardCharsets.UTF_8)) {
+                    entries.load(in);
+                }
+                addEntries(properties, names, entries, extra);
+                source = THEMES_RESOURCE + " and " + extra;
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("could not read themes", e);
+        }
+
+        Map<String, SeasonTheme> loaded = new LinkedHashMap<>();
+        loaded.put(SeasonTheme.STANDARD.getName(), SeasonTheme.STANDARD);
+        for (String name : names) {
+            try {
+                loaded.put(name, SeasonTheme.fromProperties(name, properties));
+            } catch (IllegalArgumentException e) {
+                throw new IllegalArgumentException(source + ": " + e.getMessage(), e);
+            }
+        }
+        return Collections.unmodifiableMap(loaded);
+    }
+
+    /**
+     * Adds the entries of one themes file and the names of its themes.
+     *
+     * @param properties: the entries read so far
+     * @param names:      the names of the themes read so far
+     * @param entries:    the entries of the file
+     * @param source:     the file, for error messages
+     */
+    private static void addEntries(Properties properties, Set<String> names, Properties entries, String source) {
+        String list = entries.getProperty("themes");
+        if (list == null) {
+            throw new IllegalArgumentException(source + " has no \"themes\" entry");
+        }
+        for (String name : list.split(",")) {
+            if (!name.trim().isEmpty()) {
+                names.add(name.trim());
+            }
+        }
+        properties.putAll(entries);
+    }
+}
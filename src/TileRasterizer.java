@@ -0,0 +1,919 @@
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.BasicStroke;
+import java.util.List;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Arrays;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.geom.AffineTransform;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * TileRasterizer renders a TreePainting into an image without Java2D,
+ * for large headless images (e.g. poster-size forests) where a single
+ * Graphics2D on one thread is the bottleneck.
+ * <p>
+ * The image is split into TILE_SIZE x TILE_SIZE tiles. Every trunk,
+ * branch and leaf is first binned into the tiles its bounding box
+ * touches (in painting order), then the tiles are rasterized in parallel
+ * on a ForkJoinPool, each writing only its own part of the image's int
+ * pixels.
+ * <p>
+ * The pixels match paintComponent's (background and trees, minus the
+ * transient particles and drag preview), because every primitive is
+ * rasterized the way Java2D rasterizes it without antialiasing:
+ * <ul>
+ *     <li>wide trunks and branches as the parallelogram Java2D fills for
+ *     a line with square caps (normalized endpoints, fixed-point edges),</li>
+ *     <li>branches thinner than a pixel with Java2D's Bresenham steps,</li>
+ *     <li>leaves by copying the pixels of an oval stamp rendered by Java2D
+ *     itself (one per leaf size and sub-pixel position),</li>
+ *     <li>level-of-detail leaves (see TreePainting.selectSmallLeaves)
+ *     as the same single pixels.</li>
+ * </ul>
+ * At the painting's model size (the view transform is the identity,
+ * as for BatchRenderer) the image is identical to Java2D's. When the
+ * painting is scaled, leaf stamps are shared by leaves within 1/65536
+ * pixel of the same position, and an edge passing exactly through a
+ * pixel's center may be rounded the other way, so a few edge pixels
+ * may differ.
+ * Paintings that draw their own trees (AnimatedTreePainting) are not
+ * supported.
+ * <p>
+ * Picking the painted leaves uses the painting's scratch space (see
+ * selectSmallLeaves), so a painting must not be painted and rasterized
+ * at the same time.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class TileRasterizer {
+
+    /**
+     * Width and height of a tile, in pixels
+     **/
+    public static final int TILE_SIZE = 256;
+
+    /**
+     * Leaf stamps are rendered per 1/STAMP_POSITIONS of a pixel. Java2D
+     * rounds an oval's outline by its exact sub-pixel position, so
+     * coarser positions (e.g. 1/16) give hundreds of different edge
+     * pixels at odd scales
+     **/
+    private static final int STAMP_POSITIONS = 1 << 16;
+
+    /**
+     * Empty border around a leaf stamp, in pixels
+     **/
+    private static final int STAMP_PADDING = 2;
+
+    /**
+     * Java2D's limit below which a stroke is drawn as a thin line
+     * (SunGraphics2D.MinPenSizeSquared)
+     **/
+    private static final double MIN_PEN_SIZE_SQUARED = 1.000000001;
+
+    /**
+     * Java2D's sub-pixel position for normalized line endpoints
+     **/
+    private static final double NORM_POSITION = 0.25;
+
+    private static final long FIXED_ONE_HALF = 1L << 31;
+
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a rasterizer that renders tiles on the common ForkJoinPool.
+     */
+    public TileRasterizer() {
+        this(ForkJoinPool.commonPool());
+    }
+
+    /**
+     * @param pool: pool on which tiles are rendered in parallel
+     */
+    public TileRasterizer(ForkJoinPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Renders a painting into a new image.
+     *
+     * @param painting: the painting to render
+     * @param width:    width of the image
+     * @param height:   height of the image
+     * @return the rendered painting
+     */
+    public BufferedImage render(TreePainting painting, int width, int height) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        render(painting, image);
+        return image;
+    }
+
+    /**
+     * Renders a painting into an existing image, as paintComponent
+     * would paint it at the image's size.
+     *
+     * @param painting: the painting to render
+     * @param image:    a TYPE_INT_RGB image to render into
+     * @throws IllegalArgumentException if the image is not TYPE_INT_RGB
+     */
+    public void render(TreePainting painting, BufferedImage image) {
+        if (image.getType() != BufferedImage.TYPE_INT_RGB) {
+            throw new IllegalArgumentException("tiles are rendered into TYPE_INT_RGB images only");
+        }
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        BufferedImage background = BackgroundCache.acquire(painting, width, height);
+        try {
+            Scene scene = new Scene(painting, image, background);
+            scene.bin();
+            int tiles = scene.tileColumns * scene.tileRows;
+            if (tiles == 1) {
+                //Not worth handing a single tile over to the pool
+                scene.renderTile(0);
+            } else {
+                pool.invoke(new TileTask(scene, 0, tiles));
+            }
+        } finally {
+            BackgroundCache.release(painting, width, height);
+        }
+    }
+
+    /**
+     * Everything one render needs: the image, the view transform and the
+     * trees' primitives binned into tiles. Binning happens on the calling
+     * thread; afterwards tiles only read the scene and write their own pixels.
+     **/
+    private static final class Scene {
+        private final TreePainting painting;
+        private final int[] pixels;
+        private final int[] backgroundPixels;
+        private final int width;
+        private final int height;
+        private final int tileColumns;
+        private final int tileRows;
+
+        /**
+         * The view transform (scale and translation only), whether it only
+         * translates, and Java2D's integer part of such a translation
+         **/
+        private final AffineTransform view;
+        private final double scaleX;
+        private final double scaleY;
+        private final double translateX;
+        private final double translateY;
+        private final boolean translateOnly;
+        private final int transX;
+        private final int transY;
+        private final double detailScale;
+
+        private final int branchPixel;
+
+        /**
+         * The trees, in planting order. Primitives are numbered across the
+         * forest in paintTree's order: each tree's segments, then its
+         * painted leaves on top of them
+         **/
+        private final PreparedTree[] trees;
+
+        /**
+         * Numbers of the primitives touching each tile, in painting order
+         **/
+        private final int[][] tileEntries;
+        private final int[] tileCounts;
+
+        /**
+         * Leaf stamps by leaf size and stroke state (each keyed by
+         * sub-pixel position), see PreparedTree.leafStroke
+         **/
+        private final Map<Integer, Map<Long, LeafStamp>> stamps = new HashMap<>();
+
+        /**
+         * Image the leaf stamps are rendered into, one after the other
+         **/
+        private final StampCanvas stampCanvas = new StampCanvas();
+
+        /**
+         * Parallelogram or line of the segment being binned (see
+         * setUpSegment); tiles have their own, see Rasterizer
+         **/
+        private final double[] binGeometry = new double[6];
+
+        Scene(TreePainting painting, BufferedImage image, BufferedImage background) {
+            this.painting = painting;
+            this.branchPixel = painting.getTheme().getBranchColor().getRGB();
+            this.pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+            this.backgroundPixels = ((DataBufferInt) background.getRaster().getDataBuffer()).getData();
+            this.width = image.getWidth();
+            this.height = image.getHeight();
+            this.tileColumns = (width + TILE_SIZE - 1) / TILE_SIZE;
+            this.tileRows = (height + TILE_SIZE - 1) / TILE_SIZE;
+
+            view = painting.createViewTransform(width, height);
+            if ((view.getType() & ~(AffineTransform.TYPE_TRANSLATION | AffineTransform.TYPE_UNIFORM_SCALE)) != 0) {
+                throw new IllegalArgumentException("only scaling view transforms are supported: " + view);
+            }
+            scaleX = view.getScaleX();
+            scaleY = view.getScaleY();
+            translateX = view.getTranslateX();
+            translateY = view.getTranslateY();
+            translateOnly = (view.getType() & ~AffineTransform.TYPE_TRANSLATION) == 0;
+            transX = translateOnly ? (int) Math.floor(translateX + 0.5) : 0;
+            transY = translateOnly ? (int) Math.floor(translateY + 0.5) : 0;
+            detailScale = painting.getDetailScale(view);
+
+            List<TreeModel> forest = painting.getForest().getTrees();
+            trees = new PreparedTree[forest.size()];
+            int base = 0;
+            //A new Graphics2D starts out with its default stroke
+            BasicStroke leafStroke = null;
+            for (int t = 0; t < trees.length; t++) {
+                TreeModel tree = forest.get(t);
+                if (tree.getNumSegments() > 0) {
+                    leafStroke = painting.getPaintStroke(tree, tree.getNumSegments() - 1, detailScale);
+                }
+                trees[t] = new PreparedTree(tree, base, leafStroke);
+                base = Math.addExact(base, trees[t].getNumPrimitives());
+            }
+
+            tileEntries = new int[tileColumns * tileRows][];
+            tileCounts = new int[tileEntries.length];
+        }
+
+        /**
+         * Works out which leaves each tree paints, renders the leaf
+         * stamps they need and bins every primitive into the tiles
+         * its bounding box touches.
+         */
+        void bin() {
+            for (PreparedTree prepared : trees) {
+                TreeModel tree = prepared.tree;
+                for (int i = 0; i < tree.getNumSegments(); i++) {
+                    BasicStroke stroke = painting.getPaintStroke(tree, i, detailScale);
+                    if (setUpSegment(tree, i, stroke, binGeometry)) {
+                        int x1 = (int) binGeometry[0];
+                        int y1 = (int) binGeometry[1];
+                        int x2 = (int) binGeometry[2];
+                        int y2 = (int) binGeometry[3];
+                        binBox(Math.min(x1, x2), Math.min(y1, y2), Math.max(x1, x2) + 1, Math.max(y1, y2) + 1,
+                                prepared.base + i);
+                    } else {
+                        binParallelogram(binGeometry, prepared.base + i);
+                    }
+                }
+
+                int leavesBase = prepared.base + tree.getNumSegments();
+                for (int k = 0; k < prepared.numPaintedLeaves; k++) {
+                    int i = prepared.getPaintedLeaf(k);
+                    if (prepared.pixelLeaves) {
+                        int x = TreePainting.getLeafPixelX(tree, i, view);
+                        int y = TreePainting.getLeafPixelY(tree, i, view);
+                        binBox(x, y, x + 1, y + 1, leavesBase + k);
+                    } else {
+                        double deviceX = getLeafDeviceX(tree, i);
+                        double deviceY = getLeafDeviceY(tree, i);
+                        LeafStamp stamp = getStamp(prepared, deviceX, deviceY);
+                        int left = (int) Math.floor(deviceX) + stamp.left;
+                        int top = (int) Math.floor(deviceY) + stamp.top;
+                        binBox(left, top, left + stamp.width, top + stamp.spanStarts.length, leavesBase + k);
+                    }
+                }
+            }
+            //Every stamp the tiles need is rendered now
+            stampCanvas.dispose();
+        }
+
+        /**
+         * Adds a primitive to every tile its bounding box (in pixels,
+         * right and bottom exclusive) touches.
+         */
+        private void binBox(int x1, int y1, int x2, int y2, int primitive) {
+            int firstColumn = Math.max(0, Math.floorDiv(x1, TILE_SIZE));
+            int firstRow = Math.max(0, Math.floorDiv(y1, TILE_SIZE));
+            int lastColumn = Math.min(tileColumns - 1, Math.floorDiv(x2 - 1, TILE_SIZE));
+            int lastRow = Math.min(tileRows - 1, Math.floorDiv(y2 - 1, TILE_SIZE));
+            for (int row = firstRow; row <= lastRow; row++) {
+                for (int column = firstColumn; column <= lastColumn; column++) {
+                    int tile = row * tileColumns + column;
+                    int[] entries = tileEntries[tile];
+                    if (entries == null) {
+                        entries = new int[16];
+                        tileEntries[tile] = entries;
+                    } else if (tileCounts[tile] == entries.length) {
+                        entries = Arrays.copyOf(entries, 2 * entries.length);
+                        tileEntries[tile] = entries;
+                    }
+                    entries[tileCounts[tile]++] = primitive;
+                }
+            }
+        }
+
+        /**
+         * Bins a parallelogram (see setUpSegment) by the pixel rows and
+         * columns FillParallelogram would touch.
+         */
+        private void binParallelogram(double[] p, int primitive) {
+            double x = p[0];
+            double y = p[1];
+            double minX = x + Math.min(0, p[2]) + Math.min(0, p[4]);
+            double maxX = x + Math.max(0, p[2]) + Math.max(0, p[4]);
+            double minY = y + Math.min(0, p[3]) + Math.min(0, p[5]);
+            double maxY = y + Math.max(0, p[3]) + Math.max(0, p[5]);
+            binBox((int) Math.floor(minX + 0.5), (int) Math.floor(minY + 0.5),
+                    (int) Math.floor(maxX + 0.5), (int) Math.floor(maxY + 0.5), primitive);
+        }
+
+        /**
+         * Works out how Java2D draws a segment with a stroke through the
+         * view transform (PixelToParallelogramConverter.drawGeneralLine).
+         *
+         * @param geometry: receives the pixel end points of a thin line
+         *                  (x1, y1, x2, y2), or the corner and the two edge
+         *                  vectors of a wide line's parallelogram
+         * @return true for a thin line, false for a parallelogram
+         */
+        boolean setUpSegment(TreeModel tree, int i, BasicStroke stroke, double[] geometry) {
+            double ux1 = tree.getSegmentX1(i);
+            double uy1 = tree.getSegmentY1(i);
+            double ux2 = tree.getSegmentX2(i);
+            double uy2 = tree.getSegmentY2(i);
+            double lineWidth = stroke.getLineWidth();
+
+            double x1 = ux1 * scaleX + translateX;
+            double y1 = uy1 * scaleY + translateY;
+            double x2 = ux2 * scaleX + translateX;
+            double y2 = uy2 * scaleY + translateY;
+            if (isThin(stroke)) {
+                geometry[0] = Math.floor(x1 - transX) + transX;
+                geometry[1] = Math.floor(y1 - transY) + transY;
+                geometry[2] = Math.floor(x2 - transX) + transX;
+                geometry[3] = Math.floor(y2 - transY) + transY;
+                return true;
+            }
+
+            //Stroke control normalizes end points to a fixed sub-pixel position
+            x1 = normalize(x1);
+            y1 = normalize(y1);
+            x2 = normalize(x2);
+            y2 = normalize(y2);
+            if (!translateOnly) {
+                //Scale the width by how much the transform stretches the line's normal
+                double dx = ux2 - ux1;
+                double dy = uy2 - uy1;
+                double length = length(dx, dy);
+                if (length == 0) {
+                    dx = length = 1;
+                }
+                lineWidth *= length(scaleX * (dy / length), scaleY * (-dx / length));
+            }
+            lineWidth = Math.max(lineWidth, 1.0);
+
+            double dx = x2 - x1;
+            double dy = y2 - y1;
+            double length = length(dx, dy);
+            double udx;
+            double udy;
+            if (length == 0) {
+                udx = lineWidth;
+                udy = 0;
+            } else {
+                udx = lineWidth * dx / length;
+                udy = lineWidth * dy / length;
+            }
+            //Square caps extend the line by half its width at both ends
+            geometry[0] = x1 + udy / 2.0 - udx / 2.0;
+            geometry[1] = y1 - udx / 2.0 - udy / 2.0;
+            geometry[2] = -udy;
+            geometry[3] = udx;
+            geometry[4] = dx + udx;
+            geometry[5] = dy + udy;
+            return false;
+        }
+
+        /**
+         * Tells whether Java2D treats a stroke as thin under the view
+         * transform (SunGraphics2D.validateBasicStroke). Thin strokes draw
+         * lines as single pixel paths; they also change how Java2D fills
+         * ovals, so leaves depend on the stroke the branches left set.
+         *
+         * @param stroke: the stroke, or null for the default stroke
+         * @return true for a thin stroke
+         */
+        boolean isThin(BasicStroke stroke) {
+            if (translateOnly) {
+                return stroke == null || stroke.getLineWidth() <= 1.0f;
+            }
+            double widthSquared = Math.abs(scaleX * scaleY);
+            if (stroke != null) {
+                widthSquared *= stroke.getLineWidth() * stroke.getLineWidth();
+            }
+            return widthSquared <= MIN_PEN_SIZE_SQUARED;
+        }
+
+        double getLeafDeviceX(TreeModel tree, int i) {
+            return getLeafLeft(tree, i) * scaleX + translateX;
+        }
+
+        double getLeafDeviceY(TreeModel tree, int i) {
+            return getLeafTop(tree, i) * scaleY + translateY;
+        }
+
+        /**
+         * Returns the stamp for a leaf at a device position, rendering
+         * it (on the binning thread) if no leaf needed it yet.
+         *
+         * @param prepared: the leaf's tree
+         * @param deviceX:  left of the leaf in device pixels
+         * @param deviceY:  top of the leaf in device pixels
+         */
+        LeafStamp getStamp(PreparedTree prepared, double deviceX, double deviceY) {
+            double fractionX = deviceX - Math.floor(deviceX);
+            double fractionY = deviceY - Math.floor(deviceY);
+            long position = (long) (fractionX * STAMP_POSITIONS) * STAMP_POSITIONS
+                    + (long) (fractionY * STAMP_POSITIONS);
+            LeafStamp stamp = prepared.leafStamps.get(position);
+            if (stamp == null) {
+                stamp = new LeafStamp(stampCanvas, prepared.leafSize, prepared.leafStroke,
+                        scaleX, scaleY, fractionX, fractionY);
+                prepared.leafStamps.put(position, stamp);
+            }
+            return stamp;
+        }
+
+        /**
+         * Renders one tile: copies its part of the background and then
+         * rasterizes, in painting order, every primitive binned into it.
+         *
+         * @param tile: row * tileColumns + column
+         */
+        void renderTile(int tile) {
+            new Rasterizer(this, tile).run();
+        }
+
+        /**
+         * A tree, the leaves it paints (see TreePainting.paintTree)
+         * and where its primitives start in the forest's numbering
+         **/
+        private final class PreparedTree {
+            private final TreeModel tree;
+            private final int base;
+            private final int leafSize;
+            private final boolean pixelLeaves;
+            private final int[] leafOrder;
+            private final int numPaintedLeaves;
+            private final Map<Long, LeafStamp> leafStamps;
+            private final BasicStroke leafStroke;
+
+            /**
+             * @param tree:       the tree
+             * @param base:       number of the tree's first primitive
+             * @param leafStroke: the stroke set when its leaves are painted
+             *                    (the last segment's), or null for the default
+             */
+            PreparedTree(TreeModel tree, int base, BasicStroke leafStroke) {
+                this.tree = tree;
+                this.base = base;
+                //Same rounding as paintLeaf
+                this.leafSize = (int) tree.getLeafSize();
+
+                double leafPixels = tree.getLeafSize() * detailScale;
+                pixelLeaves = leafPixels < TreePainting.LOD_PIXEL_LEAF_PIXELS;
+                if (leafPixels < TreePainting.LOD_CLUSTER_LEAF_PIXELS) {
+                    leafOrder = new int[tree.getNumLeaves()];
+                    int count = painting.selectSmallLeaves(tree, view, leafPixels, leafOrder);
+                    numPaintedLeaves = !pixelLeaves && leafSize <= 0 ? 0 : count;
+                } else {
+                    leafOrder = null;
+                    //fillOval fills nothing for leaves under a unit across
+                    numPaintedLeaves = leafSize <= 0 ? 0 : tree.getNumLeaves();
+                }
+                leafStamps = stamps.computeIfAbsent(2 * leafSize + (isThin(leafStroke) ? 0 : 1),
+                        key -> new HashMap<>());
+                this.leafStroke = leafStroke;
+            }
+
+            int getNumPrimitives() {
+                return tree.getNumSegments() + numPaintedLeaves;
+            }
+
+            /**
+             * @param k: position of the leaf in painting order
+             * @return the index of the leaf in the tree
+             */
+            int getPaintedLeaf(int k) {
+                return leafOrder == null ? k : leafOrder[k];
+            }
+        }
+    }
+
+    /**
+     * Rasterizes the primitives of one tile into the shared pixels,
+     * clipped to the tile
+     **/
+    private static final class Rasterizer {
+        private final Scene scene;
+        private final int clipX1;
+        private final int clipY1;
+        private final int clipX2;
+        private final int clipY2;
+        private final double[] geometry = new double[6];
+
+        Rasterizer(Scene scene, int tile) {
+            this.scene = scene;
+            clipX1 = tile % scene.tileColumns * TILE_SIZE;
+            clipY1 = tile / scene.tileColumns * TILE_SIZE;
+            clipX2 = Math.min(scene.width, clipX1 + TILE_SIZE);
+            clipY2 = Math.min(scene.height, clipY1 + TILE_SIZE);
+        }
+
+        void run() {
+            int tile = clipY1 / TILE_SIZE * scene.tileColumns + clipX1 / TILE_SIZE;
+            for (int y = clipY1; y < clipY2; y++) {
+                System.arraycopy(scene.backgroundPixels, y * scene.width + clipX1,
+                        scene.pixels, y * scene.width + clipX1, clipX2 - clipX1);
+            }
+
+            int[] entries = scene.tileEntries[tile];
+            int count = scene.tileCounts[tile];
+            Scene.PreparedTree[] trees = scene.trees;
+            int t = 0;
+            Color leafColor = null;
+            Palette palette = scene.painting.getLeafPalette();
+            for (int e = 0; e < count; e++) {
+                int primitive = entries[e];
+                //Entries are in painting order, so trees only move forward
+                while (primitive >= trees[t].base + trees[t].getNumPrimitives()) {
+                    t++;
+                }
+                Scene.PreparedTree prepared = trees[t];
+                TreeModel tree = prepared.tree;
+                int index = primitive - prepared.base;
+
+                if (index < tree.getNumSegments()) {
+                    BasicStroke stroke = scene.painting.getPaintStroke(tree, index, scene.detailScale);
+                    if (scene.setUpSegment(tree, index, stroke, geometry)) {
+                        drawLine((int) geometry[0], (int) geometry[1], (int) geometry[2], (int) geometry[3],
+                                scene.branchPixel);
+                    } else {
+                        fillParallelogram(geometry[0], geometry[1], geometry[2], geometry[3],
+                                geometry[4], geometry[5], scene.branchPixel);
+                    }
+                    continue;
+                }
+
+                int leaf = prepared.getPaintedLeaf(index - tree.getNumSegments());
+                int rgb = tree.getLeafColor(leaf);
+                if (leafColor == null || leafColor.getRGB() != rgb) {
+                    leafColor = palette.lookup(rgb);
+                    if (leafColor == null) {
+                        leafColor = new Color(rgb);
+                    }
+                }
+                if (prepared.pixelLeaves) {
+                    int x = TreePainting.getLeafPixelX(tree, leaf, scene.view);
+                    int y = TreePainting.getLeafPixelY(tree, leaf, scene.view);
+                    if (x >= clipX1 && x < clipX2 && y >= clipY1 && y < clipY2) {
+                        scene.pixels[y * scene.width + x] = leafColor.getRGB();
+                    }
+                } else {
+                    double deviceX = scene.getLeafDeviceX(tree, leaf);
+                    double deviceY = scene.getLeafDeviceY(tree, leaf);
+                    LeafStamp stamp = scene.getStamp(prepared, deviceX, deviceY);
+                    fillStamp(stamp, (int) Math.floor(deviceX), (int) Math.floor(deviceY), leafColor.getRGB());
+                }
+            }
+        }
+
+        /**
+         * Draws a one pixel wide line from (x1, y1) to (x2, y2), both
+         * included, with the same steps as Java2D's DrawLine loops.
+         */
+        private void drawLine(int x1, int y1, int x2, int y2, int pixel) {
+            int dx = x2 - x1;
+            int dy = y2 - y1;
+            int ax = Math.abs(dx);
+            int ay = Math.abs(dy);
+            boolean xMajor = ax >= ay;
+            int steps = xMajor ? ax : ay;
+            int errorMajor = 2 * (xMajor ? ay : ax);
+            int errorMinor = 2 * steps;
+            int error = -(errorMinor / 2);
+            int stepX = dx < 0 ? -1 : 1;
+            int stepY = dy < 0 ? -1 : 1;
+
+            int x = x1;
+            int y = y1;
+            for (int i = 0; i <= steps; i++) {
+                if (x >= clipX1 && x < clipX2 && y >= clipY1 && y < clipY2) {
+                    scene.pixels[y * scene.width + x] = pixel;
+                }
+                error += errorMajor;
+                if (error >= 0) {
+                    if (xMajor) {
+                        y += stepY;
+                    } else {
+                        x += stepX;
+                    }
+                    error -= errorMinor;
+                }
+                if (xMajor) {
+                    x += stepX;
+                } else {
+                    y += stepY;
+                }
+            }
+        }
+
+        /**
+         * Fills a parallelogram (a corner and the two edge vectors) the
+         * way Java2D's FillParallelogram loops do: a pixel is filled if its
+         * center lies inside, with the left and right edges stepped down the
+         * rows in 32.32 fixed point from the first row of the image.
+         */
+        private void fillParallelogram(double x0, double y0, double dx1, double dy1,
+                                       double dx2, double dy2, int pixel) {
+            //Make both edge vectors point down, the first one left of the second
+            if (dy1 < 0) {
+                x0 += dx1;
+                y0 += dy1;
+                dx1 = -dx1;
+                dy1 = -dy1;
+            }
+            if (dy2 < 0) {
+                x0 += dx2;
+                y0 += dy2;
+                dx2 = -dx2;
+                dy2 = -dy2;
+            }
+            if (dx1 * dy2 > dx2 * dy1) {
+                double swap = dx1;
+                dx1 = dx2;
+                dx2 = swap;
+                swap = dy1;
+                dy1 = dy2;
+                dy2 = swap;
+            }
+
+            double minX = x0 + Math.min(0, dx1) + Math.min(0, dx2);
+            double maxX = x0 + Math.max(0, dx1) + Math.max(0, dx2);
+            int left = Math.max(Math.max(0, clipX1), (int) Math.floor(minX + 0.5));
+            int right = Math.min(clipX2, (int) Math.floor(maxX + 0.5));
+            //Rows are clipped to the image, not the tile, so stepping starts where Java2D's does
+            int top = Math.max(0, (int) Math.floor(y0 + 0.5));
+            int bottom = Math.min(scene.height, (int) Math.floor(y0 + dy1 + dy2 + 0.5));
+            if (right <= left || bottom <= top) {
+                return;
+            }
+
+            double leftSlope = dy1 == 0 ? 0 : dx1 / dy1;
+            double rightSlope = dy2 == 0 ? 0 : dx2 / dy2;
+            long leftStep = toFixed(leftSlope);
+            long rightStep = toFixed(rightSlope);
+            int leftCorner = (int) Math.floor(y0 + dy1 + 0.5);
+            int rightCorner = (int) Math.floor(y0 + dy2 + 0.5);
+
+            //Both edges start at the top corner
+            int y = top;
+            long leftX = initEdge(y, x0, y0, leftSlope);
+            long rightX = initEdge(y, x0, y0, rightSlope);
+            int end = Math.min(Math.min(leftCorner, rightCorner), bottom);
+            fillRows(y, end, leftX, leftStep, rightX, rightStep, left, right, pixel);
+            if (end > y) {
+                leftX += leftStep * (end - y);
+                rightX += rightStep * (end - y);
+                y = end;
+            }
+
+            //The edge whose corner comes first turns
+            if (leftCorner < rightCorner) {
+                leftX = initEdge(y, x0 + dx1, y0 + dy1, rightSlope);
+                leftStep = rightStep;
+            } else {
+                rightX = initEdge(y, x0 + dx2, y0 + dy2, leftSlope);
+                rightStep = leftStep;
+            }
+            end = Math.min(Math.max(leftCorner, rightCorner), bottom);
+            fillRows(y, end, leftX, leftStep, rightX, rightStep, left, right, pixel);
+            if (end > y) {
+                leftX += leftStep * (end - y);
+                rightX += rightStep * (end - y);
+                y = end;
+            }
+
+            //Then the other one
+            if (leftCorner < rightCorner) {
+                rightX = initEdge(y, x0 + dx2, y0 + dy2, leftSlope);
+                rightStep = toFixed(leftSlope);
+            } else {
+                leftX = initEdge(y, x0 + dx1, y0 + dy1, rightSlope);
+                leftStep = toFixed(rightSlope);
+            }
+            fillRows(y, bottom, leftX, leftStep, rightX, rightStep, left, right, pixel);
+        }
+
+        /**
+         * Fills the rows from..to (exclusive) of a parallelogram that lie
+         * in the tile, given the fixed-point edges at row from.
+         */
+        private void fillRows(int from, int to, long leftX, long leftStep, long rightX, long rightStep,
+                              int left, int right, int pixel) {
+            int first = Math.max(from, clipY1);
+            int last = Math.min(to, clipY2);
+            for (int y = first; y < last; y++) {
+                int x1 = Math.max(left, (int) ((leftX + leftStep * (y - from)) >> 32));
+                int x2 = Math.min(right, (int) ((rightX + rightStep * (y - from)) >> 32));
+                int row = y * scene.width;
+                if (x1 < x2) {
+                    Arrays.fill(scene.pixels, row + x1, row + x2, pixel);
+                }
+            }
+        }
+
+        /**
+         * Copies a leaf stamp, placed at whole device pixels, into the tile.
+         */
+        private void fillStamp(LeafStamp stamp, int x, int y, int pixel) {
+            int top = y + stamp.top;
+            int first = Math.max(top, clipY1);
+            int last = Math.min(top + stamp.spanStarts.length, clipY2);
+            for (int row = first; row < last; row++) {
+                int span = row - top;
+                int x1 = Math.max(clipX1, x + stamp.left + stamp.spanStarts[span]);
+                int x2 = Math.min(clipX2, x + stamp.left + stamp.spanEnds[span]);
+                if (x1 < x2) {
+                    Arrays.fill(scene.pixels, row * scene.width + x1, row * scene.width + x2, pixel);
+                }
+            }
+        }
+    }
+
+    /**
+     * The pixels Java2D fills for fillOval of one leaf size at one
+     * sub-pixel position: one span (start and end, exclusive) per row,
+     * relative to the leaf's whole device pixel position
+     **/
+    private static final class LeafStamp {
+        private final int left;
+        private final int top;
+        private final int width;
+        private final int[] spanStarts;
+        private final int[] spanEnds;
+
+        LeafStamp(StampCanvas canvas, int leafSize, BasicStroke stroke, double scaleX, double scaleY,
+                  double fractionX, double fractionY) {
+            int imageWidth = (int) Math.ceil(leafSize * Math.abs(scaleX)) + 2 * STAMP_PADDING + 1;
+            int imageHeight = (int) Math.ceil(leafSize * Math.abs(scaleY)) + 2 * STAMP_PADDING + 1;
+            Graphics2D g = canvas.clear(imageWidth, imageHeight);
+            //A new Graphics2D starts out with its default stroke
+            g.setStroke(stroke != null ? stroke : StampCanvas.DEFAULT_STROKE);
+            g.setTransform(new AffineTransform(scaleX, 0, 0, scaleY,
+                    fractionX + STAMP_PADDING, fractionY + STAMP_PADDING));
+            g.fillOval(0, 0, leafSize, leafSize);
+
+            int[] pixels = canvas.pixels;
+            int stride = canvas.image.getWidth();
+            int[] starts = new int[imageHeight];
+            int[] ends = new int[imageHeight];
+            int firstRow = imageHeight;
+            int lastRow = -1;
+            int maxEnd = 0;
+            for (int y = 0; y < imageHeight; y++) {
+                //Ovals are convex, so each row is at most one span
+                int start = -1;
+                int end = -1;
+                for (int x = 0; x < imageWidth; x++) {
+                    if (pixels[y * stride + x] != 0) {
+                        if (start < 0) {
+                            start = x;
+                        }
+                        end = x + 1;
+                    }
+                }
+                if (start >= 0) {
+                    firstRow = Math.min(firstRow, y);
+                    lastRow = y;
+                    maxEnd = Math.max(maxEnd, end);
+                    starts[y] = start;
+                    ends[y] = end;
+                }
+            }
+
+            left = -STAMP_PADDING;
+            top = firstRow - STAMP_PADDING;
+            width = maxEnd;
+            int rows = Math.max(0, lastRow - firstRow + 1);
+            spanStarts = Arrays.copyOfRange(starts, firstRow, firstRow + rows);
+            spanEnds = Arrays.copyOfRange(ends, firstRow, firstRow + rows);
+        }
+    }
+
+    /**
+     * One white-on-black image leaf stamps are rendered into, grown as
+     * needed, so rendering thousands of stamps (one per sub-pixel
+     * position at odd scales) does not create an image and a Graphics2D
+     * for each
+     **/
+    private static final class StampCanvas {
+        private static final BasicStroke DEFAULT_STROKE = new BasicStroke();
+
+        private BufferedImage image;
+        private Graphics2D graphics;
+        private int[] pixels;
+
+        /**
+         * Clears the top left width x height pixels, growing the image if
+         * it is smaller.
+         *
+         * @return the graphics to render the stamp with, painting white
+         */
+        Graphics2D clear(int width, int height) {
+            if (image == null || image.getWidth() < width || image.getHeight() < height) {
+                dispose();
+                image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+                graphics = image.createGraphics();
+                graphics.setColor(Color.WHITE);
+                pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+                return graphics;
+            }
+            int stride = image.getWidth();
+            for (int y = 0; y < height; y++) {
+                Arrays.fill(pixels, y * stride, y * stride + width, 0);
+            }
+            return graphics;
+        }
+
+        void dispose() {
+            if (graphics != null) {
+                graphics.dispose();
+            }
+            image = null;
+            graphics = null;
+            pixels = null;
+        }
+    }
+
+    /**
+     * Renders a range of tiles, splitting it in halves down to single tiles
+     **/
+    private static final class TileTask extends RecursiveAction {
+        private final Scene scene;
+        private final int from;
+        private final int to;
+
+        TileTask(Scene scene, int from, int to) {
+            this.scene = scene;
+            this.from = from;
+            this.to = to;
+        }
+
+        protected void compute() {
+            if (to - from == 1) {
+                scene.renderTile(from);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new TileTask(scene, from, middle), new TileTask(scene, middle, to));
+        }
+    }
+
+    /**
+     * @return left of a leaf as paintLeaf passes it to fillOval
+     */
+    private static int getLeafLeft(TreeModel tree, int i) {
+        double leafSize = tree.getLeafSize();
+        return (int) (tree.getLeafX(i) - leafSize / 2);
+    }
+
+    /**
+     * @return top of a leaf as paintLeaf passes it to fillOval
+     */
+    private static int getLeafTop(TreeModel tree, int i) {
+        double leafSize = tree.getLeafSize();
+        return (int) (tree.getLeafY(i) - leafSize / 2);
+    }
+
+    private static double normalize(double v) {
+        return Math.floor(v + NORM_POSITION) + NORM_POSITION;
+    }
+
+    private static double length(double x, double y) {
+        return x == 0 ? Math.abs(y) : y == 0 ? Math.abs(x) : Math.sqrt(x * x + y * y);
+    }
+
+    private static long toFixed(double value) {
+        return (long) (value * FIXED_ONE_HALF * 2);
+    }
+
+    /**
+     * @return the fixed-point x at which an edge through (x, y) crosses
+     * the center of a row, rounded so that its whole part is the first
+     * pixel whose center is right of the edge
+     */
+    private static long initEdge(int row, double x, double y, double slope) {
+        return toFixed(x + slope * (row + 0.5 - y)) + FIXED_ONE_HALF - 1;
+    }
+}
@@ -1,3 +1,6 @@
+import java.util.Arrays;
+import java.nio.file.Paths;
+import javax.swing.JScrollPane;
 import javax.swing.JFrame;
 
 /**
@@ -8,9 +11,21 @@ import javax.swing.JFrame;
  * To create a single tree painting:
  *     java -cp bin TreeApplication
  *
- * To create a collage of five seasons of tree paintings:
+ * To create a collage of tree paintings, one per season (see ThemeRegistry):
  *     java -cp bin TreeApplication seasons
  *
+ * To create a scrollable wall of rows x columns paintings (20 x 20 by default):
+ *     java -cp bin TreeApplication wall 20 20
+ *
+ * To paint one tree that morphs through the four seasons:
+ *     java -cp bin TreeApplication animate
+ *
+ * To render paintings to PNG files without a display (see BatchRenderer):
+ *     java -cp bin TreeApplication render output-dir -f jobs.txt
+ *
+ * To open a saved scene file (see SceneFile):
+ *     java -cp bin TreeApplication open painting.scene
+ *
  * @author ponbarry
  **/
 public class TreeApplication
@@ -19,12 +34,19 @@ public class TreeApplication
 	public static final int COLLAGE_FRAME_WIDTH = 1200;
 	public static final int SINGLE_FRAME_WIDTH = 400;
 	public static final int FRAME_HEIGHT = 500;
+	public static final int DEFAULT_WALL_SIZE = 20;
 
 	/**
 	 * Create a JFrame that holds the TreePaintings.
 	 **/
-	public static void main( String[] args )
+	public static void main( String[] args ) throws Exception
 	{
+		// if argument "render" is passed in, render headless instead of opening a window
+		if (args.length > 0 && args[0].equals("render")) {
+			BatchRenderer.main( Arrays.copyOfRange(args, 1, args.length) );
+			return;
+		}
+
 		JFrame guiFrame;
 
 		// if argument "seasons" is passed in
@@ -39,6 +61,50 @@ public class TreeApplication
 			// create a TreeCollage and add it
 			guiFrame.add( new TreeCollagePanel(INSTRUCTIONS_TEXT) );
 
+		} else if (args.length > 0 && args[0].equals("wall")) {
+
+			// rows and columns of the wall, if given
+			int rows = args.length > 2 ? Integer.parseInt(args[1]) : DEFAULT_WALL_SIZE;
+			int columns = args.length > 2 ? Integer.parseInt(args[2]) : DEFAULT_WALL_SIZE;
+
+			// create a new JFrame to hold a scrollable wall of paintings
+			guiFrame = new JFrame( "Tree Painting Wall");
+
+			// set size
+			guiFrame.setSize( COLLAGE_FRAME_WIDTH, FRAME_HEIGHT );
+
+			// create the wall (its panels are only created once scrolled into view) and add it
+			guiFrame.add( new JScrollPane(new CollageWallPanel(rows, columns, ThemeRegistry.getNames())) );
+
+		} else if (args.length > 1 && args[0].equals("open")) {
+
+			// map the saved scene and show it in a painting of its season
+			TreePainting painting;
+			try (SceneFile scene = SceneFile.open( Paths.get(args[1]) )) {
+				painting = new TreePainting( ThemeRegistry.get( scene.getSeason() ) );
+				scene.loadInto( painting );
+			}
+
+			// create a new JFrame to hold the loaded TreePainting
+			guiFrame = new JFrame( "Tree Painting " + args[1] );
+
+			// set size
+			guiFrame.setSize( SINGLE_FRAME_WIDTH, FRAME_HEIGHT );
+
+			// create a TreePanel holding the loaded painting and add it
+			guiFrame.add( new SingleTreePanel(INSTRUCTIONS_TEXT, painting) );
+
+		} else if (args.length > 0 && args[0].equals("animate")) {
+
+			// create a new JFrame to hold a single, animated TreePainting
+			guiFrame = new JFrame( "Tree Painting Through the Seasons");
+
+			// set size
+			guiFrame.setSize( SINGLE_FRAME_WIDTH, FRAME_HEIGHT );
+
+			// create a TreePanel holding an AnimatedTreePainting and add it
+			guiFrame.add( new SingleTreePanel(INSTRUCTIONS_TEXT, new AnimatedTreePainting()) );
+
 		} else {
 
 			// create a new JFrame to hold a single TreePainting
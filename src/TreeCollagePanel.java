@@ -8,9 +8,9 @@ import javax.swing.border.Border;
 import javax.swing.BorderFactory;
 
 /**
- * TreeCollagePanel is a JPanel. It will hold all the
- * seasonal TreePaintings we want to display as well as the
- * standard, non seasonal painting. It uses
+ * TreeCollagePanel is a JPanel. It will hold a TreePainting
+ * for every theme of the ThemeRegistry: the standard, non seasonal
+ * painting and the seasonal ones. It uses
  * a GridLayout to specify how they are arranged in the GUI.
  * <p>
  * Added feature: JLabels are created and formatted to indicate
@@ -23,21 +23,12 @@ public class TreeCollagePanel extends JPanel {
     private JLabel instructions;
     private JPanel mainCollagePanel;
 
-    /**
-     * The labels for each collage panel
-     **/
-    private JLabel noSeasonLabel = new JLabel("No Season");
-    private JLabel winterLabel = new JLabel("Winter");
-    private JLabel springLabel = new JLabel("Spring");
-    private JLabel summerLabel = new JLabel("Summer");
-    private JLabel fallLabel = new JLabel("Fall");
-
     private static final Color LABEL_BORDER_COLOR = new Color(59, 72, 175);
 
     //Create a rounded, line border with specified color and width
     private Border labelBorder = BorderFactory.createLineBorder(LABEL_BORDER_COLOR, 5);
 
-    private Font font = noSeasonLabel.getFont();
+    private Font font = new JLabel().getFont();
     //Define a bolded version of the same font
     private Font boldFont = new Font(font.getFontName(), Font.BOLD, 16);
 
@@ -48,10 +39,11 @@ public class TreeCollagePanel extends JPanel {
      * display the instructions.
      * <p>
      * In the CENTER panel, adds 'mainCollagePanel', a JPanel, that will
-     * be organized with a GridLayout to hold a 5 seasonal compartments.
-     * Thus, the mainCollagePanel contains 5 inner JPanels, each of which
-     * contains a TreePainting object (1 basic TreePainting object, and
-     * 4 seasonal TreePainting subclass objects) as well as a descriptive label.
+     * be organized with a GridLayout to hold a seasonal compartment per theme
+     * (one row with a column per compartment).
+     * Thus, the mainCollagePanel contains an inner JPanel per theme, each of
+     * which contains a TreePainting object in that theme as well as a
+     * descriptive label (the theme's label).
      * The labels are designated to the SOUTH of the innermost panels.
      *
      * @param instructionsText; String of instructions to display
@@ -70,22 +62,13 @@ public class TreeCollagePanel extends JPanel {
         instructions.setBorder(labelBorder);
         instructions.setFont(boldFont);
 
-        mainCollagePanel = new JPanel(new GridLayout(1, 4));
+        mainCollagePanel = new JPanel(new GridLayout(1, 0));
         add(mainCollagePanel, BorderLayout.CENTER);
 
-        //Total of 5 separate mini panels within the mainCollage panel
-        JPanel standardPanel = new JPanel();
-        JPanel winterPanel = new JPanel();
-        JPanel springPanel = new JPanel();
-        JPanel summerPanel = new JPanel();
-        JPanel fallPanel = new JPanel();
-
-        //Set up, fill and format all the panels (standard panel + 4 seasonal panels)
-        setUpASeasonPanel(standardPanel, noSeasonLabel, new TreePainting());
-        setUpASeasonPanel(winterPanel, winterLabel, new WinterTreePainting());
-        setUpASeasonPanel(springPanel, springLabel, new SpringTreePainting());
-        setUpASeasonPanel(summerPanel, summerLabel, new SummerTreePainting());
-        setUpASeasonPanel(fallPanel, fallLabel, new FallTreePainting());
+        //Set up, fill and format a separate mini panel per theme within the mainCollage panel
+        for (SeasonTheme theme : ThemeRegistry.getThemes()) {
+            setUpASeasonPanel(new JPanel(), new JLabel(theme.getLabel()), new TreePainting(theme));
+        }
     }
 
     /**
@@ -102,6 +85,13 @@ public class TreeCollagePanel extends JPanel {
         panel.setLayout(new BorderLayout());
         mainCollagePanel.add(panel);
         panel.add(painting, BorderLayout.CENTER);
+        //Let snow, leaves and petals fall in the seasons that have them
+        if (painting.getTheme().hasParticles()) {
+            painting.setParticlesEnabled(true);
+        }
+        //Publish the painting's paint metrics over JMX under its season
+        painting.getMetrics().register(label.getText());
+        painting.setMetricsOverlayVisible(Boolean.getBoolean(PaintMetrics.OVERLAY_PROPERTY));
         panel.add(label, BorderLayout.SOUTH);
         label.setHorizontalAlignment(JLabel.CENTER);
         label.setBorder(labelBorder);
@@ -0,0 +1,395 @@
+import java.awt.Color;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.SplittableRandom;
+import java.util.function.Function;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * TreeGenerator grows a recursive (fractal) tree out of a trunk.
+ * A fixed number of branches grows out of the end of the trunk, each
+ * within a cone around the trunk direction and GOLDEN_RATIO times
+ * shorter than the trunk. Every branch then acts as the trunk for the
+ * next level, until the configured depth is reached and a leaf is
+ * placed at the end of each outermost branch.
+ * <p>
+ * The default generator (depth 1, NUM_BRANCHES branches) grows the
+ * original single level tree (painted with its leaves over all branches,
+ * see TreePainting.paintTree).
+ * <p>
+ * Large subtrees are grown in parallel on a ForkJoinPool. Every forked
+ * subtree draws from its own SplittableRandom, split off its parent's in
+ * a fixed order, and writes to a fixed range of the arrays, so the same
+ * random stream always yields the same tree however many threads run.
+ * <p>
+ * Interrupting the thread that asked for a tree (e.g. by cancelling the
+ * Future it runs in) stops the generation: every task gives up as soon
+ * as it sees the interrupt, so a stale tree does not keep the pool busy.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class TreeGenerator {
+
+    /**
+     * Default upper bound on the number of segments in a tree
+     **/
+    public static final int DEFAULT_MAX_SEGMENTS = 1_000_000;
+
+    /**
+     * Depth is stored per segment in a byte
+     **/
+    private static final int MAX_DEPTH = Byte.MAX_VALUE;
+
+    /**
+     * Subtrees with at least this many segments are grown as separate
+     * fork/join tasks; smaller ones are grown by the task that owns them
+     **/
+    static final int PARALLEL_THRESHOLD = 4096;
+
+    private final int depth;
+    private final int branchingFactor;
+    private final double branchCone;
+    private final ForkJoinPool pool;
+
+    /**
+     * Creates a generator for the original single level tree.
+     */
+    public TreeGenerator() {
+        this(1, TreePainting.NUM_BRANCHES, TreePainting.BRANCH_CONE, DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * Creates a generator for recursive trees that grows
+     * large trees on the common ForkJoinPool.
+     *
+     * @see #TreeGenerator(int, int, double, int, ForkJoinPool)
+     */
+    public TreeGenerator(int depth, int branchingFactor, double branchCone, int maxSegments) {
+        this(depth, branchingFactor, branchCone, maxSegments, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Creates a generator for recursive trees. If a tree of the requested
+     * depth would need more than maxSegments segments, the depth is
+     * reduced to the deepest tree that fits in that budget.
+     *
+     * @param depth:           number of levels of branches (at least 1)
+     * @param branchingFactor: number of branches growing out of each branch (at least 1)
+     * @param branchCone:      maximum angle between a branch and its parent, in radians
+     * @param maxSegments:     branch budget: maximum number of segments (including trunk)
+     * @param pool:            pool on which large subtrees are grown in parallel
+     */
+    public TreeGenerator(int depth, int branchingFactor, double branchCone, int maxSegments,
+                         ForkJoinPool pool) {
+        if (depth < 1 || depth > MAX_DEPTH) {
+            throw new IllegalArgumentException("depth must be between 1 and " + MAX_DEPTH + ": " + depth);
+        }
+        if (branchingFactor < 1) {
+            throw new IllegalArgumentException("branchingFactor must be at least 1: " + branchingFactor);
+        }
+        if (maxSegments < 1 + branchingFactor) {
+            throw new IllegalArgumentException("maxSegments must fit at least one level of branches: " + maxSegments);
+        }
+
+        //Shrink the tree until it fits into the branch budget
+        while (countSegments(depth, branchingFactor) > maxSegments) {
+            depth--;
+        }
+
+        this.depth = depth;
+        this.branchingFactor = branchingFactor;
+        this.branchCone = branchCone;
+        this.pool = pool;
+    }
+
+    public int getDepth() {
+        return depth;
+    }
+
+    public int getBranchingFactor() {
+        return branchingFactor;
+    }
+
+    public double getBranchCone() {
+        return branchCone;
+    }
+
+    /**
+     * Counts the segments (trunk plus all branches) of a tree.
+     *
+     * @param depth:           number of levels of branches
+     * @param branchingFactor: number of branches growing out of each branch
+     * @return 1 + b + b^2 + ... + b^depth, or Long.MAX_VALUE on overflow
+     */
+    static long countSegments(int depth, int branchingFactor) {
+        long total = 1;
+        long level = 1;
+        for (int d = 1; d <= depth; d++) {
+            if (level > Long.MAX_VALUE / branchingFactor) {
+                return Long.MAX_VALUE;
+            }
+            level *= branchingFactor;
+            total += level;
+            if (total < 0) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Generates a tree growing from (x1, y1) to (x2, y2) from a seed.
+     * The same seed, trunk and generator settings always regenerate
+     * exactly the same tree; the seed is recorded in the returned model.
+     *
+     * @param x1:         x coordinate at which the trunk starts
+     * @param y1:         y coordinate at which the trunk starts
+     * @param x2:         x coordinate at which the trunk ends
+     * @param y2:         y coordinate at which the trunk ends
+     * @param seed:       seed of all random branch angles and leaf colors
+     * @param leafColors: picks the color of each leaf from the given random stream
+     * @return the generated tree
+     * @throws CancellationException if the calling thread is interrupted while generating
+     */
+    public TreeModel generate(double x1, double y1, double x2, double y2,
+                              long seed, Function<SplittableRandom, Color> leafColors) {
+        return generate(x1, y1, x2, y2, seed, new SplittableRandom(seed), leafColors);
+    }
+
+    /**
+     * Generates a tree growing from (x1, y1) to (x2, y2).
+     * The same random stream (e.g. a SplittableRandom with the same seed)
+     * always generates the same tree.
+     *
+     * @param x1:         x coordinate at which the trunk starts
+     * @param y1:         y coordinate at which the trunk starts
+     * @param x2:         x coordinate at which the trunk ends
+     * @param y2:         y coordinate at which the trunk ends
+     * @param random:     source of random branch angles and leaf colors
+     * @param leafColors: picks the color of each leaf from the given random stream
+     * @return the generated tree
+     * @throws CancellationException if the calling thread is interrupted while generating
+     */
+    public TreeModel generate(double x1, double y1, double x2, double y2,
+                              SplittableRandom random, Function<SplittableRandom, Color> leafColors) {
+        //No seed to record; the stream could be anywhere in its sequence
+        return generate(x1, y1, x2, y2, TreeModel.NO_SEED, random, leafColors);
+    }
+
+    private TreeModel generate(double x1, double y1, double x2, double y2, long seed,
+                               SplittableRandom random, Function<SplittableRandom, Color> leafColors) {
+        Growth growth = new Growth(depth, branchingFactor, leafColors);
+
+        //The trunk is segment 0
+        growth.setSegment(0, x1, y1, x2, y2, 0);
+
+        //Aesthetically configure branch length relative to length of trunk
+        double trunkLength = Math.hypot(x2 - x1, y2 - y1);
+        double branchLength = trunkLength / TreePainting.GOLDEN_RATIO;
+
+        GrowTask trunkTask = new GrowTask(growth, x2, y2, getTrunkAngle(x1, y1, x2, y2),
+                branchLength, 1, random, 1, 0);
+        if (growth.depths.length < PARALLEL_THRESHOLD) {
+            //Not worth handing a small tree over to the pool
+            trunkTask.compute();
+        } else {
+            pool.invoke(trunkTask);
+        }
+
+        //Leaves are sized relative to the outermost branches
+        float leafSize = (float) (branchLength / Math.pow(TreePainting.GOLDEN_RATIO, depth - 1)
+                / TreePainting.LEAF_DIAM_DIVIDER);
+
+        return new TreeModel(growth.segments, growth.depths, growth.leaves, growth.leafColors, leafSize, seed);
+    }
+
+    /**
+     * Grows branchingFactor branches out of (x, y) and, recursively,
+     * the branches growing out of those. Each branch's subtree is stored
+     * right after the branch itself, so the index of every segment and
+     * leaf is known up front. Subtrees of at least PARALLEL_THRESHOLD
+     * segments are forked with a random stream split off this one.
+     *
+     * @param growth:       arrays being filled in
+     * @param x:            x coordinate at which the branches start
+     * @param y:            y coordinate at which the branches start
+     * @param parentAngle:  direction of the parent branch (or trunk)
+     * @param branchLength: length of the branches at this level
+     * @param level:        recursion level of the branches (1 for those out of the trunk)
+     * @param random:       random stream owned by the calling task
+     * @param segmentIndex: index of the first branch's segment
+     * @param leafIndex:    index of the first leaf below these branches
+     */
+    private void growBranches(Growth growth, double x, double y, double parentAngle,
+                              double branchLength, int level, SplittableRandom random,
+                              int segmentIndex, int leafIndex) {
+        if (growth.caller.isInterrupted()) {
+            throw new CancellationException("tree generation interrupted");
+        }
+
+        int subtreeSegments = growth.subtreeSegments[level];
+        int subtreeLeaves = growth.subtreeLeaves[level];
+        List<GrowTask> forks = null;
+
+        for (int i = 0; i < branchingFactor; i++) {
+            double angle = getRandomBranchAngle(parentAngle, branchCone, random);
+
+            //Compute the end point of the branch: x is cos, y is sin
+            double endX = x + branchLength * Math.cos(angle);
+            double endY = y + branchLength * Math.sin(angle);
+
+            growth.setSegment(segmentIndex, x, y, endX, endY, level);
+
+            if (level == depth) {
+                //Paint on the leaves/blossoms only at the outermost branches
+                growth.setLeaf(leafIndex, endX, endY, random);
+            } else if (subtreeSegments >= PARALLEL_THRESHOLD) {
+                if (forks == null) {
+                    forks = new ArrayList<>(branchingFactor);
+                }
+                forks.add(new GrowTask(growth, endX, endY, angle, branchLength / TreePainting.GOLDEN_RATIO,
+                        level + 1, random.split(), segmentIndex + 1, leafIndex));
+            } else {
+                growBranches(growth, endX, endY, angle, branchLength / TreePainting.GOLDEN_RATIO,
+                        level + 1, random, segmentIndex + 1, leafIndex);
+            }
+
+            segmentIndex += subtreeSegments;
+            leafIndex += subtreeLeaves;
+        }
+
+        if (forks != null) {
+            ForkJoinTask.invokeAll(forks);
+        }
+    }
+
+    /**
+     * Method that computes the direction in which a trunk grows.
+     * A degenerate (zero-length) trunk has no direction, so it is
+     * treated as growing straight up.
+     *
+     * @return the angle of the trunk in radians
+     */
+    static double getTrunkAngle(double x1, double y1, double x2, double y2) {
+        double dx = x2 - x1;
+        double dy = y2 - y1;
+
+        if (dx == 0 && dy == 0) {
+            //Straight up (the y axis points down on screen)
+            return -Math.PI / 2;
+        }
+        return Math.atan2(dy, dx);
+    }
+
+    /**
+     * Method that renders a random branch angle within branchCone
+     * of the parent direction (to avoid the tree resembling a dandelion
+     * and to create a funnel effect on branches). Sampling directly inside
+     * the cone means no angle is ever rejected.
+     *
+     * @param parentAngle: direction of the trunk or parent branch in radians
+     * @param branchCone:  maximum angle away from the parent direction
+     * @param r:           source of randomness
+     * @return double: a random angle in radians
+     */
+    static double getRandomBranchAngle(double parentAngle, double branchCone, SplittableRandom r) {
+        //Uniform in [-branchCone, branchCone) around the parent direction
+        return parentAngle + (2 * r.nextDouble() - 1) * branchCone;
+    }
+
+    /**
+     * Grows the branches out of one point as a fork/join task
+     **/
+    private final class GrowTask extends RecursiveAction {
+        private final Growth growth;
+        private final double x;
+        private final double y;
+        private final double parentAngle;
+        private final double branchLength;
+        private final int level;
+        private final SplittableRandom random;
+        private final int segmentIndex;
+        private final int leafIndex;
+
+        GrowTask(Growth growth, double x, double y, double parentAngle, double branchLength,
+                 int level, SplittableRandom random, int segmentIndex, int leafIndex) {
+            this.growth = growth;
+            this.x = x;
+            this.y = y;
+            this.parentAngle = parentAngle;
+            this.branchLength = branchLength;
+            this.level = level;
+            this.random = random;
+            this.segmentIndex = segmentIndex;
+            this.leafIndex = leafIndex;
+        }
+
+        protected void compute() {
+            growBranches(growth, x, y, parentAngle, branchLength, level, random, segmentIndex, leafIndex);
+        }
+    }
+
+    /**
+     * The primitive arrays of a tree while it is being generated.
+     * Tasks write to disjoint ranges, so no locking is needed.
+     **/
+    private static final class Growth {
+        private final float[] segments;
+        private final byte[] depths;
+        private final float[] leaves;
+        private final int[] leafColors;
+        private final Function<SplittableRandom, Color> leafColorSource;
+
+        /**
+         * Thread that asked for the tree; forked tasks watch it for interrupts
+         **/
+        private final Thread caller = Thread.currentThread();
+
+        /**
+         * Number of segments and leaves in the subtree of a
+         * single branch at each level (including the branch)
+         **/
+        private final int[] subtreeSegments;
+        private final int[] subtreeLeaves;
+
+        Growth(int depth, int branchingFactor, Function<SplittableRandom, Color> leafColorSource) {
+            int numSegments = (int) countSegments(depth, branchingFactor);
+            int numLeaves = (int) (numSegments - countSegments(depth - 1, branchingFactor));
+
+            this.segments = new float[4 * numSegments];
+            this.depths = new byte[numSegments];
+            this.leaves = new float[2 * numLeaves];
+            this.leafColors = new int[numLeaves];
+            this.leafColorSource = leafColorSource;
+
+            subtreeSegments = new int[depth + 1];
+            subtreeLeaves = new int[depth + 1];
+            int leavesBelow = 1;
+            for (int level = depth; level >= 1; level--) {
+                subtreeSegments[level] = (int) countSegments(depth - level, branchingFactor);
+                subtreeLeaves[level] = leavesBelow;
+                leavesBelow *= branchingFactor;
+            }
+        }
+
+        void setSegment(int index, double x1, double y1, double x2, double y2, int depth) {
+            int i = 4 * index;
+            segments[i] = (float) x1;
+            segments[i + 1] = (float) y1;
+            segments[i + 2] = (float) x2;
+            segments[i + 3] = (float) y2;
+            depths[index] = (byte) depth;
+        }
+
+        void setLeaf(int index, double x, double y, SplittableRandom random) {
+            leaves[2 * index] = (float) x;
+            leaves[2 * index + 1] = (float) y;
+
+            //Pick the leaf/blossom color once so repaints keep the same colors
+            leafColors[index] = leafColorSource.apply(random).getRGB();
+        }
+    }
+}
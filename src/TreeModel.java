@@ -0,0 +1,194 @@
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.IntBuffer;
+
+/**
+ * TreeModel holds the geometry of one generated tree: the trunk and
+ * every branch as line segments, and the position and color of every
+ * leaf. A model is built once when the user releases the mouse, so that
+ * repainting the component simply replays the same tree instead of
+ * rolling new random angles.
+ * <p>
+ * Trees may have up to about a million segments, so the geometry is
+ * kept in flat primitive buffers rather than one object per segment.
+ * Generated trees wrap arrays; trees loaded from a SceneFile are views
+ * straight onto the memory-mapped file. Segment 0 is always the trunk.
+ * <p>
+ * Trees generated from a seed remember it, so the same tree can be
+ * regenerated exactly from its trunk and seed alone.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class TreeModel {
+
+    /**
+     * Seed reported by trees that were not generated from a seed
+     **/
+    public static final long NO_SEED = Long.MIN_VALUE;
+
+    /**
+     * Segment i runs from (segments[4i], segments[4i+1])
+     * to (segments[4i+2], segments[4i+3])
+     **/
+    private final FloatBuffer segments;
+
+    /**
+     * Recursion level of each segment (0 for the trunk,
+     * 1 for branches growing out of the trunk, etc.)
+     **/
+    private final ByteBuffer segmentDepths;
+
+    /**
+     * Leaf i is centered on (leaves[2i], leaves[2i+1])
+     * and has the RGB color leafColors[i]
+     **/
+    private final FloatBuffer leaves;
+    private final IntBuffer leafColors;
+
+    /**
+     * Diameter of every leaf (relative to the length of the outermost branches)
+     **/
+    private final float leafSize;
+
+    /**
+     * Seed the tree was generated from, or NO_SEED
+     **/
+    private final long seed;
+
+    /**
+     * Bounding box of all segment end points
+     **/
+    private final float minX;
+    private final float minY;
+    private final float maxX;
+    private final float maxY;
+
+    /**
+     * Constructor stores the already generated geometry.
+     *
+     * @param segments:      segment end points, four floats per segment
+     * @param segmentDepths: recursion level of each segment
+     * @param leaves:        leaf centers, two floats per leaf
+     * @param leafColors:    RGB color of each leaf
+     * @param leafSize:      diameter of every leaf
+     * @param seed:          seed the tree was generated from, or NO_SEED
+     */
+    public TreeModel(float[] segments, byte[] segmentDepths, float[] leaves, int[] leafColors,
+                     float leafSize, long seed) {
+        this.segments = FloatBuffer.wrap(segments);
+        this.segmentDepths = ByteBuffer.wrap(segmentDepths);
+        this.leaves = FloatBuffer.wrap(leaves);
+        this.leafColors = IntBuffer.wrap(leafColors);
+        this.leafSize = leafSize;
+        this.seed = seed;
+
+        float x0 = Float.POSITIVE_INFINITY;
+        float y0 = Float.POSITIVE_INFINITY;
+        float x1 = Float.NEGATIVE_INFINITY;
+        float y1 = Float.NEGATIVE_INFINITY;
+        for (int i = 0; i < segments.length; i += 2) {
+            x0 = Math.min(x0, segments[i]);
+            y0 = Math.min(y0, segments[i + 1]);
+            x1 = Math.max(x1, segments[i]);
+            y1 = Math.max(y1, segments[i + 1]);
+        }
+        minX = x0;
+        minY = y0;
+        maxX = x1;
+        maxY = y1;
+    }
+
+    /**
+     * Constructor for a tree whose geometry and bounds are already
+     * stored elsewhere (e.g. in a mapped SceneFile). The buffers are
+     * used as they are, not copied; segment 0 starts at index 0.
+     *
+     * @param segments:      segment end points, four floats per segment
+     * @param segmentDepths: recursion level of each segment
+     * @param leaves:        leaf centers, two floats per leaf
+     * @param leafColors:    RGB color of each leaf
+     * @param leafSize:      diameter of every leaf
+     * @param seed:          seed the tree was generated from, or NO_SEED
+     * @param minX:          bounding box of all segment end points
+     * @param minY:          (see minX)
+     * @param maxX:          (see minX)
+     * @param maxY:          (see minX)
+     */
+    TreeModel(FloatBuffer segments, ByteBuffer segmentDepths, FloatBuffer leaves, IntBuffer leafColors,
+              float leafSize, long seed, float minX, float minY, float maxX, float maxY) {
+        this.segments = segments;
+        this.segmentDepths = segmentDepths;
+        this.leaves = leaves;
+        this.leafColors = leafColors;
+        this.leafSize = leafSize;
+        this.seed = seed;
+        this.minX = minX;
+        this.minY = minY;
+        this.maxX = maxX;
+        this.maxY = maxY;
+    }
+
+    public int getNumSegments() {
+        return segmentDepths.limit();
+    }
+
+    public float getSegmentX1(int i) {
+        return segments.get(4 * i);
+    }
+
+    public float getSegmentY1(int i) {
+        return segments.get(4 * i + 1);
+    }
+
+    public float getSegmentX2(int i) {
+        return segments.get(4 * i + 2);
+    }
+
+    public float getSegmentY2(int i) {
+        return segments.get(4 * i + 3);
+    }
+
+    public int getSegmentDepth(int i) {
+        return segmentDepths.get(i);
+    }
+
+    public int getNumLeaves() {
+        return leafColors.limit();
+    }
+
+    public float getLeafX(int i) {
+        return leaves.get(2 * i);
+    }
+
+    public float getLeafY(int i) {
+        return leaves.get(2 * i + 1);
+    }
+
+    public int getLeafColor(int i) {
+        return leafColors.get(i);
+    }
+
+    public float getLeafSize() {
+        return leafSize;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    public float getMinX() {
+        return minX;
+    }
+
+    public float getMinY() {
+        return minY;
+    }
+
+    public float getMaxX() {
+        return maxX;
+    }
+
+    public float getMaxY() {
+        return maxY;
+    }
+}
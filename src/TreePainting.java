@@ -1,13 +1,30 @@
 import java.awt.Color;
-import java.util.Random;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.ArrayDeque;
+import java.util.SplittableRandom;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Rectangle;
 import java.awt.BasicStroke;
+import java.awt.image.BufferedImage;
+import javax.swing.Timer;
 import java.awt.geom.Line2D;
 import java.awt.geom.Point2D;
 import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.awt.event.MouseMotionListener;
+import java.awt.Dimension;
+import java.awt.geom.AffineTransform;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * TreePainting is a GUI interface that allows the user to paint a tree
@@ -18,25 +35,46 @@ import java.awt.event.MouseListener;
  * has the ability to determine the size of the tree (via length of mouse drag)
  * and the program will render the branches and leaf sizes proportionately
  * to the trunk.
+ * <p>
+ * Every new drag adds another tree to the painting's Forest; a right
+ * click erases the topmost tree under the mouse. Trees are grown on a
+ * background thread and only painted once they are complete, so large
+ * trees never block the event dispatch thread. While the trunk is being
+ * dragged a DragPreview is drawn over the painting, and a ParticleLayer
+ * lets the season's particles fall.
+ * <p>
+ * Trees are stored in model coordinates: the painting's coordinates at the
+ * size it first had (or was given via setModelSize). When the panel is
+ * resized the stored trees are not regenerated but drawn through one view
+ * transform, scaled so the floor stays under them. On HiDPI screens the
+ * back buffer is rendered at device resolution.
  *
  * @author: Sabirah Shuaybi
  */
 
-public class TreePainting extends JComponent implements MouseListener {
+public class TreePainting extends JComponent implements MouseListener, MouseMotionListener {
 
     protected static final int NUM_BRANCHES = 20;
 
     /**
-     * The y coordinate of the background floor
+     * The y coordinate of the background floor and its height at the
+     * reference size (the floor reaches the bottom of the panel)
      **/
     protected static final int Y_COORD_FLOOR = 370;
 
     protected static final int FLOOR_HEIGHT = 50;
 
     /**
-     * Color of trunk and branches
+     * Size of a panel the painting was designed for. Other sizes
+     * keep the floor at the same fraction of the height (see getFloorY).
      **/
-    private static final Color LIGHT_BROWN = new Color(160, 82, 45);
+    protected static final int REFERENCE_WIDTH = 240;
+    protected static final int REFERENCE_HEIGHT = Y_COORD_FLOOR + FLOOR_HEIGHT;
+
+    /**
+     * Color of trunk and branches (in the standard theme)
+     **/
+    protected static final Color LIGHT_BROWN = new Color(160, 82, 45);
 
     /**
      * The amount by which to divide by to calculate leaf diameter
@@ -57,201 +95,1269 @@ public class TreePainting extends JComponent implements MouseListener {
     protected static final double GOLDEN_RATIO = 1.618;
 
     /**
-     * Points to designate the start and end of trunk
+     * Maximum angle between the trunk and a branch (about 90 degrees)
+     **/
+    protected static final double BRANCH_CONE = Math.PI / 2;
+
+    /**
+     * Maximum number of particles per painting, milliseconds between
+     * particle frames, their size in pixels and how they fall (pixels
+     * per second squared, fraction of speed lost to air per second)
+     **/
+    protected static final int PARTICLE_CAPACITY = 100_000;
+    protected static final int PARTICLE_FRAME_MILLIS = 1000 / 60;
+    protected static final int PARTICLE_SIZE = 3;
+    protected static final float PARTICLE_GRAVITY = 60;
+    protected static final float PARTICLE_DRAG = 1.5f;
+
+    /**
+     * While the panel keeps being resized faster than this, the old back
+     * buffer is stretched to fit instead of re-rendering every step
+     **/
+    private static final int RESIZE_DEBOUNCE_MILLIS = 150;
+
+    /**
+     * Level of detail (sizes in device pixels): branches thinner or shorter
+     * than these are drawn as plain one-pixel lines, leaves smaller than
+     * LOD_CLUSTER_LEAF_PIXELS are merged per cell and leaves under
+     * LOD_PIXEL_LEAF_PIXELS become single pixels
+     **/
+    private static final double LOD_THIN_BRANCH_PIXELS = 1.5;
+    private static final double LOD_SHORT_BRANCH_PIXELS = 4;
+    static final double LOD_CLUSTER_LEAF_PIXELS = 4;
+    static final double LOD_PIXEL_LEAF_PIXELS = 1;
+
+    /**
+     * Thinnest possible stroke (one pixel, drawn by Java2D's fast line loops)
+     **/
+    private static final BasicStroke THIN_STROKE = new BasicStroke(0);
+
+    private static final AffineTransform IDENTITY = new AffineTransform();
+
+    /**
+     * Strokes for each recursion level of trunk and branches (see getSegmentStroke).
+     * Created up front so paintings on several threads can share them, and
+     * levels of equal width share one stroke, so paintTree does not switch
+     * strokes between them.
+     **/
+    private static final BasicStroke[] SEGMENT_STROKES = new BasicStroke[Byte.MAX_VALUE + 1];
+
+    static {
+        for (int depth = 0; depth < SEGMENT_STROKES.length; depth++) {
+            float width = depth == 0 ? TRUNK_WIDTH
+                    : (float) Math.max(1, BRANCH_WIDTH / Math.pow(GOLDEN_RATIO, depth - 1));
+            if (depth > 0 && SEGMENT_STROKES[depth - 1].getLineWidth() == width) {
+                SEGMENT_STROKES[depth] = SEGMENT_STROKES[depth - 1];
+            } else {
+                SEGMENT_STROKES[depth] = new BasicStroke(width);
+            }
+        }
+    }
+
+    /**
+     * Threads growing the trees of new trunks, shared by every painting
+     * (large trees also fork onto their TreeGenerator's pool). Daemon
+     * threads, so they never keep the application alive.
+     **/
+    private static final AtomicInteger GENERATION_THREADS = new AtomicInteger();
+    private static final ExecutorService GENERATION_EXECUTOR = Executors.newFixedThreadPool(
+            Runtime.getRuntime().availableProcessors(), task -> {
+                Thread thread = new Thread(task, "tree-generator-" + GENERATION_THREADS.getAndIncrement());
+                thread.setDaemon(true);
+                return thread;
+            });
+
+    /**
+     * Point at which the user pressed the mouse (start of the next trunk)
      **/
     private Point2D.Double trunkStart;
-    private Point2D.Double trunkEnd;
 
-    private boolean mouseReleased;
+    /**
+     * Every tree painted so far (each mouse release adds one).
+     * Repaints replay these models.
+     **/
+    private final Forest forest = new Forest();
+
+    /**
+     * Picks the seed of each new tree; the tree's branch angles and
+     * leaf colors are then all drawn from that seed
+     **/
+    private final SplittableRandom seeds = new SplittableRandom();
+
+    /**
+     * Season the painting is painted in: backdrop, floor, colors and particles
+     **/
+    private final SeasonTheme theme;
+
+    /**
+     * Grows the branches of each new tree (read by generation threads)
+     **/
+    private volatile TreeGenerator generator;
+
+    /**
+     * Generations of the trunks planted via plantTreeLater whose trees
+     * are not shown yet, in planting order. Only used on the event
+     * dispatch thread.
+     **/
+    private final ArrayDeque<FutureTask<TreeModel[]>> pendingGenerations = new ArrayDeque<>();
+
+    /**
+     * In retained mode the background and tree are rendered into an
+     * offscreen back buffer that is only redrawn when the tree or the
+     * panel size changes; repaints just copy the buffer to the screen.
+     **/
+    private boolean retainedMode = true;
+
+    private BufferedImage backBuffer;
+
+    /**
+     * Region of the back buffer that is out of date, or null if the
+     * back buffer matches the current tree
+     **/
+    private Rectangle dirtyRegion;
+
+    /**
+     * Shared pre-rendered backdrop for this season at the current panel
+     * size, and the size it was acquired at (see BackgroundCache)
+     **/
+    private BufferedImage background;
+    private int backgroundWidth;
+    private int backgroundHeight;
+
+    /**
+     * Falling particles (leaves, snowflakes, petals) drawn over the
+     * painting, or null while they are off
+     **/
+    private ParticleLayer particleLayer;
+
+    /**
+     * Live preview of the trunk being dragged
+     **/
+    private final DragPreview preview = new DragPreview(this);
+
+    /**
+     * Paint timings and counters of this painting (see PaintMetrics),
+     * and whether a summary of them is drawn over the painting
+     **/
+    private final PaintMetrics metrics = new PaintMetrics();
+    private boolean metricsOverlayVisible;
+
+    /**
+     * Size of the coordinate space the trees are stored in (0 until the
+     * painting first has a size), and the transform from it to the panel
+     * at its current size (viewWidth x viewHeight) and back
+     **/
+    private int modelWidth;
+    private int modelHeight;
+    private int viewWidth;
+    private int viewHeight;
+    private AffineTransform viewTransform = new AffineTransform();
+    private AffineTransform inverseViewTransform = new AffineTransform();
+
+    /**
+     * Reused by every paint, so a repaint allocates nothing of its own:
+     * the area being painted, on the panel and in model coordinates,
+     * the trees overlapping it, the line each segment is drawn as and
+     * the transform to restore once the trees are drawn
+     **/
+    private final Rectangle clipArea = new Rectangle();
+    private final Rectangle modelArea = new Rectangle();
+    private final List<TreeModel> visibleTrees = new ArrayList<>();
+    private final Line2D.Double segmentLine = new Line2D.Double();
+    private final AffineTransform savedTransform = new AffineTransform();
 
+    /**
+     * Restarted by every resize; the back buffer is only rebuilt
+     * at the new size once it has run out
+     **/
+    private final Timer resizeTimer;
+
+    /**
+     * Whether small branches and leaves are painted with cheaper
+     * primitives, and the cells covered by small leaves so far
+     **/
+    private boolean levelOfDetail = true;
+    private final CellSet leafCells = new CellSet();
+    private int[] smallLeafOrder = new int[0];
+
+    /**
+     * Constructor for a painting in the standard, non seasonal theme.
+     */
     public TreePainting() {
+        this(SeasonTheme.STANDARD);
+    }
+
+    /**
+     * @param theme: the season to paint in (see ThemeRegistry)
+     */
+    public TreePainting(SeasonTheme theme) {
+        this.theme = theme;
+        generator = new TreeGenerator(theme.getDepth(), theme.getBranchingFactor(), BRANCH_CONE,
+                TreeGenerator.DEFAULT_MAX_SEGMENTS);
 
         addMouseListener(this);
+        addMouseMotionListener(this);
+
+        resizeTimer = new Timer(RESIZE_DEBOUNCE_MILLIS, e -> repaint());
+        resizeTimer.setRepeats(false);
+        addComponentListener(new ComponentAdapter() {
+            public void componentResized(ComponentEvent e) {
+                resizeTimer.restart();
+            }
+        });
+    }
+
+    /**
+     * @return the reference size, so layouts that honor
+     * preferred sizes give the painting its designed proportions
+     */
+    public Dimension getPreferredSize() {
+        if (isPreferredSizeSet()) {
+            return super.getPreferredSize();
+        }
+        return new Dimension(REFERENCE_WIDTH, REFERENCE_HEIGHT);
     }
 
     /**
      * Method for drawing on this component.
      * Overrides the paint method specified in JComponent (parent).
-     * Calls Paints background and if mouse released, paints tree.
+     * Calls Paints background and if a tree has been generated, paints tree.
      *
      * @param g: The graphics object to draw on
      */
     public void paintComponent(Graphics g) {
-        paintBackground(g);
+        long startNanos = System.nanoTime();
+        long startBytes = PaintMetrics.currentThreadAllocatedBytes();
 
-        //Only paint tree if user has released mouse
-        if (mouseReleased) {
-            paintTree(g);
+        if (retainedMode) {
+            paintFromBackBuffer(g);
+        } else {
+            paintScene(g);
         }
+
+        paintOverlays(g, startNanos, startBytes);
     }
 
     /**
-     * Method for drawing the background of the tree painting.
-     * Draws the floor as part of the backdrop.
+     * Method for finishing a paint: draws what is shown over the scene
+     * (the falling particles, the drag preview and, if it is visible, the
+     * metrics summary) and records the paint in the metrics. Subclasses
+     * that paint the scene themselves call it at the end of their paint.
+     *
+     * @param g:          The graphics object to draw on
+     * @param startNanos: System.nanoTime() when the paint started
+     * @param startBytes: PaintMetrics.currentThreadAllocatedBytes() when the paint started
+     */
+    protected void paintOverlays(Graphics g, long startNanos, long startBytes) {
+        if (particleLayer != null) {
+            particleLayer.paint(g, getWidth(), getHeight());
+        }
+
+        preview.paint(g);
+
+        metrics.recordPaint(System.nanoTime() - startNanos,
+                PaintMetrics.currentThreadAllocatedBytes() - startBytes);
+
+        if (metricsOverlayVisible) {
+            paintMetricsOverlay(g);
+        }
+    }
+
+    /**
+     * Method for drawing a summary of the paint metrics
+     * in the top left corner of the painting.
      *
      * @param g: The graphics object to draw on
      */
-    protected void paintBackground(Graphics g) {
-        //Black backdrop fills the entire panel
-        g.setColor(Color.BLACK);
-        g.fillRect(0, 0, TreeApplication.SINGLE_FRAME_WIDTH, TreeApplication.FRAME_HEIGHT);
+    private void paintMetricsOverlay(Graphics g) {
+        String[] lines = {
+                String.format("paint %.2f ms avg, %.2f ms max (%d)",
+                        metrics.getAveragePaintMillis(), metrics.getMaxPaintMillis(), metrics.getPaintCount()),
+                String.format("bg %.1f / branches %.1f / leaves %.1f ms",
+                        metrics.getBackgroundMillis(), metrics.getBranchMillis(), metrics.getLeafMillis()),
+                String.format("%d trees, %d kB allocated",
+                        forest.size(), metrics.getAllocatedBytes() / 1024)
+        };
 
-        //Gray floor on the bottom of the panel
-        g.setColor(new Color(76, 70, 72));
-        g.fillRect(0, Y_COORD_FLOOR, TreeApplication.COLLAGE_FRAME_WIDTH / 5, FLOOR_HEIGHT);
+        int lineHeight = g.getFontMetrics().getHeight();
+        g.setColor(new Color(0, 0, 0, 160));
+        g.fillRect(0, 0, getWidth(), lineHeight * lines.length + 4);
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < lines.length; i++) {
+            g.drawString(lines[i], 4, lineHeight * (i + 1));
+        }
     }
 
     /**
-     * Method responsible for painting trunk and branches.
-     * Only paints branches at the specified range of angles
-     * coming out of the trunk (to avoid the tree
-     * resembling a dandelion and to create a more realistic
-     * looking tree with a funnel effect on branches)
+     * @return the paint timings and counters of this painting
+     */
+    public PaintMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Shows or hides a summary of the paint metrics over the painting.
+     *
+     * @param visible: true to draw the summary
+     */
+    public void setMetricsOverlayVisible(boolean visible) {
+        metricsOverlayVisible = visible;
+        repaint();
+    }
+
+    /**
+     * Method for drawing the whole painting: background and the trees
+     * of the forest. Only the trees overlapping the area being painted
+     * (the clip) are painted.
      *
      * @param g: The graphics object to draw on
      */
-    private void paintTree(Graphics g) {
-        //Type cast g into a 2D Graphics object
-        Graphics2D g2d = (Graphics2D) g;
+    private void paintScene(Graphics g) {
+        paintCachedBackground(g);
+
+        //Only paint trees once the user has released the mouse
+        if (!forest.isEmpty()) {
+            //Without a clip, the rectangle is left as the whole panel
+            clipArea.setBounds(0, 0, getWidth(), getHeight());
+            g.getClipBounds(clipArea);
+
+            //Trees are stored in model coordinates; draw them through the view transform
+            Graphics2D g2d = (Graphics2D) g;
+            savedTransform.setTransform(g2d.getTransform());
+            g2d.transform(getViewTransform());
+            toModel(clipArea, modelArea);
+            forest.query(modelArea, visibleTrees);
+            for (int i = 0; i < visibleTrees.size(); i++) {
+                paintTree(g2d, visibleTrees.get(i));
+            }
+            visibleTrees.clear();
+            g2d.setTransform(savedTransform);
+        }
+    }
+
+    /**
+     * Method for drawing the painting via the back buffer.
+     * (Re)creates the buffer if the panel size or screen scale changed,
+     * re-renders only the dirty region of it and then copies it to the
+     * screen. The buffer has one pixel per device pixel, so it stays
+     * sharp on HiDPI screens.
+     *
+     * @param g: The graphics object to draw on
+     */
+    private void paintFromBackBuffer(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        double deviceScale = ((Graphics2D) g).getTransform().getScaleX();
+        int bufferWidth = (int) Math.ceil(width * deviceScale);
+        int bufferHeight = (int) Math.ceil(height * deviceScale);
+
+        if (backBuffer == null || backBuffer.getWidth() != bufferWidth || backBuffer.getHeight() != bufferHeight) {
+            //Mid-resize, stretch the old buffer rather than re-render every step
+            if (backBuffer != null && resizeTimer.isRunning()) {
+                g.drawImage(backBuffer, 0, 0, width, height, null);
+                return;
+            }
+            //A resized panel needs a new, entirely dirty buffer
+            backBuffer = new BufferedImage(bufferWidth, bufferHeight, BufferedImage.TYPE_INT_RGB);
+            dirtyRegion = new Rectangle(0, 0, width, height);
+        }
+
+        if (dirtyRegion != null) {
+            Graphics2D bufferGraphics = backBuffer.createGraphics();
+            bufferGraphics.scale(deviceScale, deviceScale);
+            bufferGraphics.clip(dirtyRegion);
+            paintScene(bufferGraphics);
+            bufferGraphics.dispose();
+            dirtyRegion = null;
+        }
+
+        g.drawImage(backBuffer, 0, 0, width, height, null);
+    }
+
+    /**
+     * Sets the size of the coordinate space trees are stored in (e.g. the
+     * size of a saved scene). Trees are drawn scaled by the panel's height
+     * over this height. By default it is the first size the painting has.
+     *
+     * @param width:  width of the model space
+     * @param height: height of the model space
+     */
+    public void setModelSize(int width, int height) {
+        modelWidth = width;
+        modelHeight = height;
+        viewWidth = -1;
+        invalidateRegion(new Rectangle(0, 0, getWidth(), getHeight()));
+    }
+
+    /**
+     * Returns the transform from model coordinates (those of the stored
+     * trees) to the panel at its current size. Trees are scaled
+     * uniformly by the height, so they keep standing on the floor, and
+     * centered horizontally. The transform must not be modified.
+     *
+     * @return the view transform
+     */
+    protected AffineTransform getViewTransform() {
+        int width = getWidth();
+        int height = getHeight();
+        if (modelHeight == 0 && width > 0 && height > 0) {
+            //Until told otherwise, trees are stored at the first size the painting has
+            modelWidth = width;
+            modelHeight = height;
+        }
+        if (width != viewWidth || height != viewHeight) {
+            viewTransform = createViewTransform(width, height);
+            double scale = viewTransform.getScaleX();
+            inverseViewTransform = new AffineTransform(1 / scale, 0, 0, 1 / scale,
+                    -viewTransform.getTranslateX() / scale, 0);
+            preview.setViewScale(scale);
+            viewWidth = width;
+            viewHeight = height;
+        }
+        return viewTransform;
+    }
+
+    /**
+     * Computes the transform from model coordinates to a panel of the given size.
+     *
+     * @param width:  width of the panel
+     * @param height: height of the panel
+     * @return the view transform (the identity until the model size is known)
+     */
+    AffineTransform createViewTransform(int width, int height) {
+        if (modelHeight <= 0 || height <= 0) {
+            return new AffineTransform();
+        }
+        double scale = (double) height / modelHeight;
+        AffineTransform transform = AffineTransform.getTranslateInstance((width - modelWidth * scale) / 2, 0);
+        transform.scale(scale, scale);
+        return transform;
+    }
+
+    /**
+     * Method that maps a point on the panel to model coordinates.
+     *
+     * @param x: x coordinate on the panel
+     * @param y: y coordinate on the panel
+     * @return the point in model coordinates
+     */
+    private Point2D toModel(double x, double y) {
+        getViewTransform();
+        return inverseViewTransform.transform(new Point2D.Double(x, y), null);
+    }
+
+    /**
+     * Method that maps an area on the panel to model coordinates. The view
+     * transform only scales and translates, so this is plain arithmetic
+     * rather than a transformed shape.
+     *
+     * @param area:   the area on the panel
+     * @param result: set to the smallest rectangle in model coordinates covering the area
+     */
+    private void toModel(Rectangle area, Rectangle result) {
+        AffineTransform view = getViewTransform();
+        double scale = view.getScaleX();
+        double translateX = view.getTranslateX();
+        int x1 = (int) Math.floor((area.x - translateX) / scale);
+        int y1 = (int) Math.floor(area.y / scale);
+        int x2 = (int) Math.ceil((area.x + area.width - translateX) / scale);
+        int y2 = (int) Math.ceil((area.y + area.height) / scale);
+        result.setBounds(x1, y1, x2 - x1, y2 - y1);
+    }
+
+    /**
+     * Method that maps an area in model coordinates to the panel.
+     *
+     * @param bounds: the area in model coordinates
+     * @return the smallest rectangle on the panel covering the area
+     */
+    private Rectangle toView(Rectangle bounds) {
+        Rectangle view = getViewTransform().createTransformedShape(bounds).getBounds();
+        view.grow(1, 1);
+        return view;
+    }
+
+    /**
+     * Method that returns the y coordinate of the floor for a panel height.
+     * The floor starts at the same fraction of the height as Y_COORD_FLOOR
+     * of REFERENCE_HEIGHT and reaches the bottom.
+     *
+     * @param height: height of the panel
+     * @return y coordinate at which the floor starts
+     */
+    protected static int getFloorY(int height) {
+        return (int) Math.round(height * (double) Y_COORD_FLOOR / REFERENCE_HEIGHT);
+    }
+
+    /**
+     * @return the season the painting is painted in
+     */
+    public SeasonTheme getTheme() {
+        return theme;
+    }
+
+    /**
+     * Sets the generator used for trees painted from now on
+     * (e.g. a recursive TreeGenerator with more than one level).
+     *
+     * @param generator: the generator for new trees
+     */
+    public void setTreeGenerator(TreeGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * @return the generator used for new trees
+     */
+    public TreeGenerator getTreeGenerator() {
+        return generator;
+    }
+
+    /**
+     * Turns retained mode (painting through an offscreen back buffer)
+     * on or off. Retained mode is on by default.
+     *
+     * @param retainedMode: true to paint through the back buffer
+     */
+    public void setRetainedMode(boolean retainedMode) {
+        this.retainedMode = retainedMode;
+        if (!retainedMode) {
+            //Release the buffer; it is rebuilt if retained mode is turned back on
+            backBuffer = null;
+        }
+        repaint();
+    }
+
+    /**
+     * Marks a region of the painting as out of date
+     * and asks Swing to repaint only that region.
+     *
+     * @param region: the region to repaint
+     */
+    private void invalidateRegion(Rectangle region) {
+        if (dirtyRegion == null) {
+            dirtyRegion = new Rectangle(region);
+        } else {
+            dirtyRegion.add(region);
+        }
+        repaint(region);
+    }
+
+    /**
+     * Method for copying the shared, pre-rendered backdrop of this
+     * season onto the painting. Swaps the backdrop for one of the
+     * right size if the panel has been resized.
+     *
+     * @param g: The graphics object to draw on
+     */
+    private void paintCachedBackground(Graphics g) {
+        int width = getWidth();
+        int height = getHeight();
+        if (width <= 0 || height <= 0) {
+            return;
+        }
+
+        if (background == null || backgroundWidth != width || backgroundHeight != height) {
+            releaseBackground();
+            background = BackgroundCache.acquire(this, width, height);
+            backgroundWidth = width;
+            backgroundHeight = height;
+        }
+
+        long startNanos = System.nanoTime();
+        g.drawImage(background, 0, 0, null);
+        metrics.recordBackground(System.nanoTime() - startNanos);
+    }
 
-        //To enable a thicker trunk
-        g2d.setStroke(new BasicStroke(TRUNK_WIDTH));
+    /**
+     * Gives the current backdrop back to the shared cache.
+     */
+    private void releaseBackground() {
+        if (background != null) {
+            BackgroundCache.release(this, backgroundWidth, backgroundHeight);
+            background = null;
+        }
+    }
+
+    /**
+     * Releases the shared backdrop and pauses the particles when the
+     * painting is removed from its container.
+     */
+    public void removeNotify() {
+        releaseBackground();
+        if (particleLayer != null) {
+            particleLayer.stop();
+        }
+        super.removeNotify();
+    }
+
+    /**
+     * Resumes the particles when the painting is added to a container again.
+     */
+    public void addNotify() {
+        super.addNotify();
+        if (particleLayer != null) {
+            particleLayer.start();
+        }
+    }
+
+    /**
+     * Frees the back buffer, particles, particle layer and backdrop of
+     * the painting (e.g. while it is scrolled out of view). The trees
+     * are kept and the images are rebuilt by the next paint; particles
+     * that were falling are dropped and new ones start falling.
+     */
+    public void releaseBuffers() {
+        backBuffer = null;
+        dirtyRegion = null;
+        if (particleLayer != null) {
+            particleLayer.release();
+        }
+        releaseBackground();
+    }
+
+    /**
+     * @return the bytes of memory held by this painting alone (back
+     * buffer, particles and particle layer; backdrops are shared)
+     */
+    public long getBufferBytes() {
+        long bytes = 0;
+        if (backBuffer != null) {
+            bytes += 4L * backBuffer.getWidth() * backBuffer.getHeight();
+        }
+        if (particleLayer != null) {
+            bytes += particleLayer.getBytes();
+        }
+        return bytes;
+    }
+
+    /**
+     * Turns the falling particles of this season (see emitParticles)
+     * on or off. Particles are off by default. Their memory is taken
+     * as particles are emitted, up to what the theme needs at most
+     * (see getParticleCapacity).
+     *
+     * @param enabled: true to animate falling particles
+     */
+    public void setParticlesEnabled(boolean enabled) {
+        if (enabled && particleLayer == null) {
+            particleLayer = new ParticleLayer(this, getParticleCapacity());
+            particleLayer.start();
+        } else if (!enabled && particleLayer != null) {
+            particleLayer.stop();
+            particleLayer = null;
+            repaint();
+        }
+    }
 
-        g2d.setColor(LIGHT_BROWN);
+    /**
+     * Method that returns how many particles of this season can be alive
+     * at once: as many as are emitted (rounded up) in every frame of a
+     * particle's life, but no more than PARTICLE_CAPACITY.
+     *
+     * @return the capacity of the painting's particles (0 if the theme has none)
+     */
+    protected int getParticleCapacity() {
+        if (!theme.hasParticles()) {
+            return 0;
+        }
+        double frames = theme.getParticleLife() * 1000.0 / PARTICLE_FRAME_MILLIS;
+        return (int) Math.min(PARTICLE_CAPACITY, Math.ceil(Math.ceil(theme.getParticleRate()) * frames));
+    }
 
-        //Draw trunk from user press point to user release point
-        g2d.drawLine((int) trunkStart.getX(), (int) trunkStart.getY(), (int) trunkEnd.getX(), (int) trunkEnd.getY());
+    /**
+     * Method for adding new falling particles, called about 60 times a
+     * second while particles are enabled: the theme's particles fall from
+     * the top of the panel or off random leaves of the tree (the standard
+     * theme has none).
+     *
+     * @param particles: the painting's particles
+     * @param random:    random stream for particle positions and speeds
+     */
+    protected void emitParticles(ParticleSystem particles, SplittableRandom random) {
+        SeasonTheme.ParticleSource source = theme.getParticleSource();
+        TreeModel tree = getTree();
+        if (source == SeasonTheme.ParticleSource.NONE
+                || (source == SeasonTheme.ParticleSource.LEAVES && (tree == null || tree.getNumLeaves() == 0))) {
+            return;
+        }
 
-        //Consolidate the start/end points of trunk into a line object
-        Line2D.Double trunkLine = new Line2D.Double(trunkStart, trunkEnd);
+        //Whole particles every frame, plus one more by the chance of the fraction
+        double rate = theme.getParticleRate();
+        int count = (int) rate;
+        if (count < rate && random.nextDouble() < rate - count) {
+            count++;
+        }
 
-        //Aesthetically configure branch length relative to length of trunk
-        double trunkLength = trunkStart.distance(trunkEnd);
-        double branchLength = trunkLength / GOLDEN_RATIO;
+        Color fixedColor = theme.getParticleColor();
+        for (int i = 0; i < count; i++) {
+            float x;
+            float y;
+            int rgb;
+            if (source == SeasonTheme.ParticleSource.SKY) {
+                x = (float) (random.nextDouble() * getWidth());
+                y = 0;
+                rgb = fixedColor != null ? fixedColor.getRGB() : theme.getLeafPalette().random(random).getRGB();
+            } else {
+                int leaf = random.nextInt(tree.getNumLeaves());
+                //Leaves are stored in model coordinates, particles live on the panel
+                Point2D start = getViewTransform().transform(
+                        new Point2D.Float(tree.getLeafX(leaf), tree.getLeafY(leaf)), null);
+                x = (float) start.getX();
+                y = (float) start.getY();
+                rgb = fixedColor != null ? fixedColor.getRGB() : tree.getLeafColor(leaf);
+            }
+            float vx = randomSpeed(random, theme.getMinParticleSpeedX(), theme.getMaxParticleSpeedX());
+            float vy = randomSpeed(random, theme.getMinParticleSpeedY(), theme.getMaxParticleSpeedY());
+            if (!particles.spawn(x, y, vx, vy, rgb, theme.getParticleLife())) {
+                return;
+            }
+        }
+    }
 
-        int numBranches = 0;
+    /**
+     * @return a speed between min and max (only drawn at random if they differ)
+     */
+    private static float randomSpeed(SplittableRandom random, float min, float max) {
+        return min == max ? min : (float) (min + random.nextDouble() * (max - min));
+    }
 
-        //Draw branches at the end of the trunk
-        while (numBranches < NUM_BRANCHES) {
+    /**
+     * Method for drawing the background of the tree painting.
+     * Draws the floor as part of the backdrop. Only called once per
+     * theme and panel size; the result is shared via BackgroundCache.
+     *
+     * @param g:      The graphics object to draw on
+     * @param width:  width of the panel
+     * @param height: height of the panel
+     */
+    protected void paintBackground(Graphics g, int width, int height) {
+        //Backdrop fills the entire panel
+        g.setColor(theme.getBackdropColor());
+        g.fillRect(0, 0, width, height);
 
-            //Get the end point of branch (1. To see if branch will be angled within the
-            //specified range and 2. To know where to draw the leaf)
-            Point2D.Double branchEndPoint = computeEndpoint(trunkEnd, branchLength, getRandomAngle());
+        //Floor on the bottom of the panel
+        int floorY = getFloorY(height);
+        g.setColor(theme.getFloorColor());
+        g.fillRect(0, floorY, width, height - floorY);
+    }
 
-            //Create a line for a branch from end of trunk point to end of branch point
-            Line2D.Double branchLine = new Line2D.Double(trunkEnd, branchEndPoint);
+    /**
+     * @return how long the latest drag preview frame took to reach the
+     * screen after the oldest drag event it shows, in nanoseconds
+     */
+    public long getPreviewLatencyNanos() {
+        return preview.getLatencyNanos();
+    }
 
-            double angle = getAbsoluteAngleBetween(trunkLine, branchLine);
+    /**
+     * @return the slowest drag preview latency so far, in nanoseconds
+     */
+    public long getMaxPreviewLatencyNanos() {
+        return preview.getMaxLatencyNanos();
+    }
 
-            //Draw branch only if the angle is within the desired range (about 90 degrees)
-            if (angle < Math.PI / 2) {
-                g2d.setStroke(new BasicStroke(BRANCH_WIDTH));
-                //Reset branch color to light brown
-                g2d.setColor(LIGHT_BROWN);
+    /**
+     * Method responsible for generating the trunk, branches and leaf colors
+     * of a new tree with this painting's TreeGenerator. Only grows branches
+     * at the specified range of angles coming out of the trunk (to avoid the tree
+     * resembling a dandelion and to create a more realistic
+     * looking tree with a funnel effect on branches)
+     *
+     * @param x1:   x coordinate at which the trunk starts
+     * @param y1:   y coordinate at which the trunk starts
+     * @param x2:   x coordinate at which the trunk ends
+     * @param y2:   y coordinate at which the trunk ends
+     * @param seed: seed of the branch angles and leaf colors
+     * @return the generated tree
+     */
+    public TreeModel generateTree(double x1, double y1, double x2, double y2, long seed) {
+        TreeModel tree = generator.generate(x1, y1, x2, y2, seed, this::getLeafColor);
+        metrics.recordTreeGenerated(tree.getNumSegments() - 1);
+        return tree;
+    }
 
-                g2d.draw(branchLine);
+    /**
+     * Adds the tree grown from the given trunk and seed to the painting
+     * (e.g. to reproduce a tree from its recorded seed). The trunk is
+     * given in model coordinates (see setModelSize).
+     *
+     * @param x1:   x coordinate at which the trunk starts
+     * @param y1:   y coordinate at which the trunk starts
+     * @param x2:   x coordinate at which the trunk ends
+     * @param y2:   y coordinate at which the trunk ends
+     * @param seed: seed of the branch angles and leaf colors
+     */
+    public void plantTree(double x1, double y1, double x2, double y2, long seed) {
+        showTrees(generateTrees(x1, y1, x2, y2, seed));
+    }
 
-                //Paint on the leaves/blossoms
-                paintLeaf(g2d, branchEndPoint, branchLength);
+    /**
+     * Grows the tree for a new trunk on a background thread and adds it
+     * to the painting once it is complete; nothing is repainted before
+     * then. Trunks planted while earlier ones are still growing grow
+     * alongside them, and their trees are added in planting order, so
+     * a tree never ends up under one planted after it.
+     * Must be called on the event dispatch thread.
+     *
+     * @param x1:   x coordinate at which the trunk starts
+     * @param y1:   y coordinate at which the trunk starts
+     * @param x2:   x coordinate at which the trunk ends
+     * @param y2:   y coordinate at which the trunk ends
+     * @param seed: seed of the branch angles and leaf colors
+     */
+    public void plantTreeLater(double x1, double y1, double x2, double y2, long seed) {
+        FutureTask<TreeModel[]> generation = new FutureTask<>(() -> generateTrees(x1, y1, x2, y2, seed)) {
+            protected void done() {
+                SwingUtilities.invokeLater(() -> showFinishedGenerations());
+            }
+        };
+        pendingGenerations.add(generation);
+        GENERATION_EXECUTOR.execute(generation);
+    }
 
-                numBranches++;
+    /**
+     * Shows the trees of the oldest pending generations that are done,
+     * in planting order. A generation that is done before the ones planted
+     * earlier waits for them. Generations cancelled in the meantime are
+     * no longer pending and are never shown.
+     */
+    private void showFinishedGenerations() {
+        while (!pendingGenerations.isEmpty() && pendingGenerations.peek().isDone()) {
+            FutureTask<TreeModel[]> generation = pendingGenerations.poll();
+            TreeModel[] trees;
+            try {
+                trees = generation.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (ExecutionException e) {
+                //The generations behind this one still get shown
+                if (!pendingGenerations.isEmpty()) {
+                    SwingUtilities.invokeLater(() -> showFinishedGenerations());
+                }
+                //Fail on this thread, as a tree grown here would have
+                Throwable cause = e.getCause();
+                if (cause instanceof RuntimeException) {
+                    throw (RuntimeException) cause;
+                }
+                if (cause instanceof Error) {
+                    throw (Error) cause;
+                }
+                throw new IllegalStateException(cause);
             }
+            showTrees(trees);
         }
     }
 
     /**
-     * Method for painting leaf centered on top of branch.
+     * Cancels every generation still in flight, for when their trees
+     * would be replaced anyway (e.g. by clearTrees). Their threads are
+     * interrupted, which makes TreeGenerator give up early.
+     */
+    protected void cancelPendingGenerations() {
+        for (FutureTask<TreeModel[]> generation : pendingGenerations) {
+            generation.cancel(true);
+        }
+        pendingGenerations.clear();
+    }
+
+    /**
+     * @return true while the trees of any planted trunk are still being grown
+     */
+    public boolean isGenerating() {
+        return !pendingGenerations.isEmpty();
+    }
+
+    /**
+     * Method that grows everything the painting shows for a new trunk:
+     * here, a single tree. Called on a generation thread by
+     * plantTreeLater, so it must not change the painting; the
+     * trees it returns are complete and never modified afterwards.
      *
-     * @param g:            The graphics object to draw on
-     * @param p:            Point at which to draw leaf (AKA branch end point)
-     * @param branchLength: Length of the branch (relative to trunk length)
+     * @param x1:   x coordinate at which the trunk starts
+     * @param y1:   y coordinate at which the trunk starts
+     * @param x2:   x coordinate at which the trunk ends
+     * @param y2:   y coordinate at which the trunk ends
+     * @param seed: seed of the branch angles and leaf colors
+     * @return the trees for showTrees
      */
-    protected void paintLeaf(Graphics g, Point2D.Double p, double branchLength) {
-        g.setColor(getLeafColor());
+    protected TreeModel[] generateTrees(double x1, double y1, double x2, double y2, long seed) {
+        return new TreeModel[]{generateTree(x1, y1, x2, y2, seed)};
+    }
 
-        //Calculate leaf size relative to branch length
-        //The shorter the trunk, the smaller the leaves
-        //The longer the trunk, the larger the leaves
-        double leafSize = branchLength / LEAF_DIAM_DIVIDER;
+    /**
+     * Method that shows the trees generateTrees grew for a new trunk:
+     * here, by adding the tree on top of the others.
+     *
+     * @param trees: the trees returned by generateTrees
+     */
+    protected void showTrees(TreeModel[] trees) {
+        addTree(trees[0]);
+    }
 
-        //To center leaf on top of the branch branch
-        double leafCenterX = p.getX() - leafSize / 2;
-        double leafCenterY = p.getY() - leafSize / 2;
+    /**
+     * Adds a tree (e.g. one generated earlier via generateTree) on top
+     * of the others and repaints only the area it covers.
+     *
+     * @param tree: the tree to add
+     */
+    public void addTree(TreeModel tree) {
+        Rectangle bounds = getTreeBounds(tree);
+        forest.add(tree, bounds);
+        invalidateRegion(toView(bounds));
+    }
 
-        //Draw the leaf
-        g.fillOval((int) leafCenterX, (int) leafCenterY, (int) leafSize, (int) leafSize);
+    /**
+     * Removes a tree and repaints only the area it covered.
+     *
+     * @param tree: the tree to remove
+     * @return false if the tree is not in this painting
+     */
+    public boolean removeTree(TreeModel tree) {
+        Rectangle bounds = forest.remove(tree);
+        if (bounds == null) {
+            return false;
+        }
+        invalidateRegion(toView(bounds));
+        return true;
     }
 
     /**
-     * Method that renders a random angle.
+     * Replaces every tree of the painting with a single tree,
+     * cancelling the trees still being grown (see clearTrees).
      *
-     * @return double: a random angle in radians
+     * @param newTree: the tree to paint from now on
      */
-    private double getRandomAngle() {
-        Random r = new Random();
-        //In radians
-        return r.nextDouble() * 2 * Math.PI;
+    public void setTree(TreeModel newTree) {
+        clearTrees();
+        addTree(newTree);
     }
 
     /**
-     * Compute the point that is length away from point p at the specified angle.
-     * Uses cosine to get the new x coordinate, sine to get the new y coordinate.
+     * Removes every tree of the painting, and cancels the ones
+     * still being grown for planted trunks, if any.
+     */
+    public void clearTrees() {
+        cancelPendingGenerations();
+        if (!forest.isEmpty()) {
+            forest.clear();
+            invalidateRegion(new Rectangle(0, 0, getWidth(), getHeight()));
+        }
+    }
+
+    /**
+     * @return the most recently painted tree (whose seed is available
+     * via getSeed), or null if no tree has been painted yet
+     */
+    public TreeModel getTree() {
+        return forest.getNewest();
+    }
+
+    /**
+     * @param x: x coordinate of a point on the painting (on the panel)
+     * @param y: y coordinate of a point on the painting (on the panel)
+     * @return the topmost tree covering the point, or null
+     */
+    public TreeModel getTreeAt(int x, int y) {
+        Point2D point = toModel(x, y);
+        return forest.treeAt((int) Math.floor(point.getX()), (int) Math.floor(point.getY()));
+    }
+
+    /**
+     * @return every tree of the painting, in planting order
+     */
+    public Forest getForest() {
+        return forest;
+    }
+
+    /**
+     * Method that computes the area covered by a tree, including
+     * the stroke width of trunk and branches and the size of leaves.
      *
-     * @param p:      a (starting) point
-     * @param length: the distance away from point p
-     * @param angle:  specified angle
-     * @return point that is length away from p at given angle
+     * @param tree: the tree to measure
+     * @return bounding box of everything paintTree draws for the tree
      */
-    private Point2D.Double computeEndpoint(Point2D p, double length, double angle) {
-        return new Point2D.Double(p.getX() + length * Math.cos(angle), // x is cos
-                p.getY() + length * Math.sin(angle)); // y is sin
+    private Rectangle getTreeBounds(TreeModel tree) {
+        Rectangle bounds = new Rectangle((int) Math.floor(tree.getMinX()), (int) Math.floor(tree.getMinY()), 0, 0);
+        bounds.add(Math.ceil(tree.getMaxX()), Math.ceil(tree.getMaxY()));
+
+        //Grow by the widest of half a trunk stroke and half a leaf (plus rounding slack)
+        int margin = (int) Math.ceil(Math.max(TRUNK_WIDTH, tree.getLeafSize()) / 2) + 2;
+        bounds.grow(margin, margin);
+        return bounds;
     }
 
     /**
-     * Positions/Shifts line to the origin (of a typical x,y coordinate graph),
-     * thus rendering it a vector.
+     * Method that returns the stroke for a trunk or branch.
+     * The trunk is TRUNK_WIDTH wide, branches out of the trunk BRANCH_WIDTH,
+     * and each deeper level is GOLDEN_RATIO times thinner (but at least 1).
      *
-     * @param line: the line to be converted to a vector
-     * @return vector point
+     * @param depth: recursion level of the segment (0 for the trunk)
+     * @return the stroke to draw the segment with
      */
-    private Point2D.Double getVector(Line2D.Double line) {
-        //Translating line to the origin (shifting while maintaining the slope of line)
-        return new Point2D.Double(line.getX2() - line.getX1(), line.getY2() - line.getY1());
+    protected static BasicStroke getSegmentStroke(int depth) {
+        return SEGMENT_STROKES[depth];
     }
 
     /**
-     * Computes the absolute angle (no negatives)between two lines
-     * via vector formula.
+     * Method responsible for painting trunk, branches and leaves
+     * of an already generated tree.
+     * <p>
+     * All segments are painted first and then all leaves, so leaves are
+     * always on top. The original single level tree drew each leaf right
+     * after its branch, letting a later branch cover an earlier leaf; that
+     * order is given up on purpose: it would switch color for every leaf,
+     * and selectSmallLeaves relies on nothing being painted over the
+     * leaves. SvgExporter and TileRasterizer use the same order.
+     * <p>
+     * Every segment and leaf is its own draw call, with the stroke and
+     * color only set when they change. Collecting them into one Path2D per
+     * stroke or color instead is several times slower: Java2D has fast
+     * paths for single wide lines and small ovals, while a path of
+     * thousands of overlapping outlines goes through its general stroker
+     * and edge lists (and changes pixels along branch edges when scaled).
      *
-     * @param line1: the first line
-     * @param line2: the second line
-     * @return the absolute value of the angle between line1 and line2
+     * @param g:    The graphics object to draw on
+     * @param tree: The tree to paint
      */
-    private double getAbsoluteAngleBetween(Line2D.Double line1, Line2D.Double line2) {
-        //Converting two lines into two vectors
-        //These vectors have been positioned at the origin
-        //(to calculate the absolute angle between them)
-        Point2D.Double v1 = getVector(line1);
-        Point2D.Double v2 = getVector(line2);
-        double y1 = v1.getY();
-        double x1 = v1.getX();
-        double x2 = v2.getX();
-        double y2 = v2.getY();
+    protected void paintTree(Graphics g, TreeModel tree) {
+        //Type cast g into a 2D Graphics object
+        Graphics2D g2d = (Graphics2D) g;
+
+        g2d.setColor(theme.getBranchColor());
+
+        long startNanos = System.nanoTime();
+
+        double scale = getDetailScale(g2d.getTransform());
+
+        //Draw trunk (segment 0) and then every branch, only switching
+        //strokes when the recursion level (or level of detail) changes
+        BasicStroke stroke = null;
+        for (int i = 0; i < tree.getNumSegments(); i++) {
+            BasicStroke segmentStroke = getPaintStroke(tree, i, scale);
+            if (segmentStroke != stroke) {
+                g2d.setStroke(segmentStroke);
+                stroke = segmentStroke;
+            }
+
+            segmentLine.setLine(tree.getSegmentX1(i), tree.getSegmentY1(i),
+                    tree.getSegmentX2(i), tree.getSegmentY2(i));
+            g2d.draw(segmentLine);
+        }
+
+        long branchesDoneNanos = System.nanoTime();
+        metrics.recordBranches(branchesDoneNanos - startNanos);
 
-        //Formula for calculating the angle between two vectors
-        double numer = (x1 * x2 + y1 * y2);
-        double denom = (Math.sqrt(x1 * x1 + y1 * y1) * Math.sqrt(x2 * x2 + y2 * y2));
-        return Math.acos(numer / denom);
+        //Paint on the leaves/blossoms with the shared colors of the palette
+        Palette palette = getLeafPalette();
+        double leafPixels = tree.getLeafSize() * scale;
+        if (leafPixels < LOD_CLUSTER_LEAF_PIXELS) {
+            paintSmallLeaves(g2d, tree, palette, leafPixels);
+            metrics.recordLeaves(System.nanoTime() - branchesDoneNanos);
+            return;
+        }
+        Color leafColor = null;
+        for (int i = 0; i < tree.getNumLeaves(); i++) {
+            int rgb = tree.getLeafColor(i);
+            if (leafColor == null || leafColor.getRGB() != rgb) {
+                leafColor = palette.lookup(rgb);
+                if (leafColor == null) {
+                    //Not one of this season's colors (e.g. a tree from another season)
+                    leafColor = new Color(rgb);
+                }
+            }
+            paintLeaf(g2d, tree.getLeafX(i), tree.getLeafY(i), tree.getLeafSize(), leafColor);
+        }
+        metrics.recordLeaves(System.nanoTime() - branchesDoneNanos);
+    }
 
+    /**
+     * Method that returns how many device pixels one unit of tree
+     * coordinates covers, for picking the level of detail.
+     *
+     * @param transform: transform from tree coordinates to device pixels
+     * @return the scale, or infinity with level of detail off
+     * (so nothing counts as small)
+     */
+    double getDetailScale(AffineTransform transform) {
+        return levelOfDetail ? Math.sqrt(Math.abs(transform.getDeterminant())) : Double.POSITIVE_INFINITY;
+    }
+
+    /**
+     * Method that returns the stroke paintTree draws a segment with.
+     * Branches too thin or too short to show their width are drawn as
+     * plain lines (the length is the cheap Manhattan length, never less
+     * than the real one).
+     *
+     * @param tree:  the tree of the segment
+     * @param i:     index of the segment
+     * @param scale: device pixels per unit of tree coordinates (see getDetailScale)
+     * @return the segment's stroke, or THIN_STROKE
+     */
+    BasicStroke getPaintStroke(TreeModel tree, int i, double scale) {
+        BasicStroke segmentStroke = getSegmentStroke(tree.getSegmentDepth(i));
+        double length = Math.abs(tree.getSegmentX2(i) - tree.getSegmentX1(i))
+                + Math.abs(tree.getSegmentY2(i) - tree.getSegmentY1(i));
+        if (segmentStroke.getLineWidth() * scale < LOD_THIN_BRANCH_PIXELS
+                || length * scale < LOD_SHORT_BRANCH_PIXELS) {
+            return THIN_STROKE;
+        }
+        return segmentStroke;
     }
 
     /**
-     * Getter method that returns leaf color.
+     * Method for painting leaves that are only a few pixels across.
+     * Leaves under a pixel across become single pixel writes; larger
+     * ones are painted as usual (see selectSmallLeaves for which).
      *
-     * @return leaf color (which, in this case, is green)
+     * @param g2d:        The graphics object to draw on
+     * @param tree:       The tree whose leaves to paint
+     * @param palette:    shared colors of the leaves
+     * @param leafPixels: diameter of the leaves on screen, in device pixels
      */
-    protected Color getLeafColor() {
-        return Color.GREEN;
+    private void paintSmallLeaves(Graphics2D g2d, TreeModel tree, Palette palette, double leafPixels) {
+        AffineTransform transform = g2d.getTransform();
+        boolean pixels = leafPixels < LOD_PIXEL_LEAF_PIXELS;
+        if (pixels) {
+            //Write device pixels directly
+            g2d.setTransform(IDENTITY);
+        }
+
+        if (smallLeafOrder.length < tree.getNumLeaves()) {
+            smallLeafOrder = new int[tree.getNumLeaves()];
+        }
+        int count = selectSmallLeaves(tree, transform, leafPixels, smallLeafOrder);
+        Color leafColor = null;
+        for (int k = 0; k < count; k++) {
+            int i = smallLeafOrder[k];
+            int rgb = tree.getLeafColor(i);
+            if (leafColor == null || leafColor.getRGB() != rgb) {
+                leafColor = palette.lookup(rgb);
+                if (leafColor == null) {
+                    leafColor = new Color(rgb);
+                }
+            }
+            if (pixels) {
+                g2d.setColor(leafColor);
+                g2d.fillRect(getLeafPixelX(tree, i, transform), getLeafPixelY(tree, i, transform), 1, 1);
+            } else {
+                paintLeaf(g2d, tree.getLeafX(i), tree.getLeafY(i), tree.getLeafSize(), leafColor);
+            }
+        }
+
+        if (pixels) {
+            g2d.setTransform(transform);
+        }
+    }
+
+    /**
+     * Method that picks which small leaves to paint, and in which order.
+     * Leaves are visited from the top (last painted) down and a leaf is
+     * skipped if a leaf above it already covers its cell, so dense clusters
+     * collapse into the few leaves that are actually visible. Leaves under
+     * a pixel across are single pixels and the cells are pixels, so the
+     * result is exactly what painting all of them would give; larger
+     * leaves share cells half a leaf across.
+     *
+     * @param tree:       The tree whose leaves to paint
+     * @param transform:  transform from tree coordinates to device pixels
+     * @param leafPixels: diameter of the leaves on screen, in device pixels
+     * @param order:      receives the indices of the leaves to paint, in
+     *                    painting order (needs room for every leaf)
+     * @return the number of leaves to paint
+     */
+    int selectSmallLeaves(TreeModel tree, AffineTransform transform, double leafPixels, int[] order) {
+        boolean pixels = leafPixels < LOD_PIXEL_LEAF_PIXELS;
+        double cellSize = pixels ? 1 : leafPixels / 2;
+
+        leafCells.reset(tree.getNumLeaves());
+        int count = 0;
+        for (int i = tree.getNumLeaves() - 1; i >= 0; i--) {
+            float x = tree.getLeafX(i);
+            float y = tree.getLeafY(i);
+            double deviceX = transform.getScaleX() * x + transform.getShearX() * y + transform.getTranslateX();
+            double deviceY = transform.getShearY() * x + transform.getScaleY() * y + transform.getTranslateY();
+            if (leafCells.add((int) Math.floor(deviceX / cellSize), (int) Math.floor(deviceY / cellSize))) {
+                order[count++] = i;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return the device pixel column a leaf under a pixel across is painted at
+     */
+    static int getLeafPixelX(TreeModel tree, int i, AffineTransform transform) {
+        return (int) Math.floor(transform.getScaleX() * tree.getLeafX(i)
+                + transform.getShearX() * tree.getLeafY(i) + transform.getTranslateX());
+    }
+
+    /**
+     * @return the device pixel row a leaf under a pixel across is painted at
+     */
+    static int getLeafPixelY(TreeModel tree, int i, AffineTransform transform) {
+        return (int) Math.floor(transform.getShearY() * tree.getLeafX(i)
+                + transform.getScaleY() * tree.getLeafY(i) + transform.getTranslateY());
+    }
+
+    /**
+     * Turns level-of-detail painting on or off (on by default). With it
+     * off every branch is stroked at its full width and every leaf is
+     * painted as an oval, however small they appear.
+     *
+     * @param levelOfDetail: true to pick cheaper primitives for small elements
+     */
+    public void setLevelOfDetail(boolean levelOfDetail) {
+        this.levelOfDetail = levelOfDetail;
+        invalidateRegion(new Rectangle(0, 0, getWidth(), getHeight()));
+    }
+
+    /**
+     * Method for painting leaf centered on top of branch.
+     *
+     * @param g:         The graphics object to draw on
+     * @param x:         x coordinate at which to draw leaf (AKA branch end point)
+     * @param y:         y coordinate at which to draw leaf
+     * @param leafSize:  Diameter of the leaf (relative to branch length)
+     * @param leafColor: Color of the leaf
+     */
+    protected void paintLeaf(Graphics g, double x, double y, double leafSize, Color leafColor) {
+        g.setColor(leafColor);
+
+        //To center leaf on top of the branch branch
+        double leafCenterX = x - leafSize / 2;
+        double leafCenterY = y - leafSize / 2;
+
+        //Draw the leaf
+        g.fillOval((int) leafCenterX, (int) leafCenterY, (int) leafSize, (int) leafSize);
+    }
+
+    /**
+     * Getter method that returns leaf color: a random color of the theme's palette.
+     * Called once per leaf while a tree is being generated, possibly from
+     * several generator threads, so it must only use the given random stream.
+     *
+     * @param random: random stream to draw any random choice from
+     * @return leaf color
+     */
+    protected Color getLeafColor(SplittableRandom random) {
+        return theme.getLeafPalette().random(random);
+    }
+
+    /**
+     * Getter method that returns every color getLeafColor may return,
+     * so that painting leaves never needs to create Color objects.
+     * Subclasses overriding getLeafColor override this too.
+     *
+     * @return the palette of leaf colors
+     */
+    protected Palette getLeafPalette() {
+        return theme.getLeafPalette();
     }
 
     /**
@@ -261,27 +1367,57 @@ public class TreePainting extends JComponent implements MouseListener {
      */
 
     public void mousePressed(MouseEvent e) {
+        //Only the left button paints trees
+        if (!SwingUtilities.isLeftMouseButton(e)) {
+            return;
+        }
         //Capture the point at which mouse was pressed
         trunkStart = new Point2D.Double(e.getX(), e.getY());
     }
 
     public void mouseReleased(MouseEvent e) {
-        mouseReleased = true;
+        if (!SwingUtilities.isLeftMouseButton(e) || trunkStart == null) {
+            return;
+        }
+        //Erase the drag preview
+        preview.hide();
 
-        //Capture the point at which mouse was released
-        trunkEnd = new Point2D.Double(e.getX(), e.getY());
+        //Now that user has completed the mouse event, generate the
+        //tree once from a fresh seed in the background (later repaints
+        //only replay it); it is added to the painting once it is ready
+        Point2D start = toModel(trunkStart.getX(), trunkStart.getY());
+        Point2D end = toModel(e.getX(), e.getY());
+        plantTreeLater(start.getX(), start.getY(), end.getX(), end.getY(), seeds.nextLong());
+        trunkStart = null;
+    }
 
-        //Now that user has completed the mouse event,
-        //invoke the paintComponent method via repaint()
-        //This will re-paint the screen with a new tree
-        //each time mouse is released
-        repaint();
+    /**
+     * Methods below are required by mouseMotionListener interface
+     *
+     * @param e: the user mouse event
+     */
+
+    public void mouseDragged(MouseEvent e) {
+        if (trunkStart == null) {
+            return;
+        }
+        preview.dragTo(trunkStart.getX(), trunkStart.getY(), e.getX(), e.getY());
+    }
+
+    public void mouseMoved(MouseEvent e) {
     }
 
     public void mouseExited(MouseEvent e) {
     }
 
     public void mouseClicked(MouseEvent e) {
+        //Right click erases the topmost tree under the mouse
+        if (SwingUtilities.isRightMouseButton(e)) {
+            TreeModel tree = getTreeAt(e.getX(), e.getY());
+            if (tree != null) {
+                removeTree(tree);
+            }
+        }
     }
 
     public void mouseEntered(MouseEvent e) {
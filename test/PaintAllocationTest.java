@@ -0,0 +1,108 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.BeforeEach;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * PaintAllocationTest checks that a steady-state repaint of an existing
+ * forest allocates nothing beyond what Java2D itself allocates, using
+ * the same per-thread allocation counter as PaintMetrics.
+ * <p>
+ * Each measurement is taken several times after a warm-up, and the
+ * smallest one counts: a regression allocates on every repaint, while
+ * a repaint that happens to run before the JIT is done does not.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class PaintAllocationTest {
+
+    private static final int WIDTH = 400;
+    private static final int HEIGHT = 500;
+
+    private static final int WARMUP_PAINTS = 20_000;
+    private static final int MEASURED_PAINTS = 5_000;
+    private static final int ROUNDS = 5;
+
+    private BufferedImage image;
+    private Graphics2D g;
+
+    @BeforeEach
+    public void setUp() {
+        assumeTrue(PaintMetrics.currentThreadAllocatedBytes() > 0, "no per-thread allocation counter");
+        image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        g = image.createGraphics();
+    }
+
+    @Test
+    public void repaintOfBranchesAllocatesNothing() {
+        TreePainting painting = createPainting();
+        for (int i = 0; i < 40; i++) {
+            painting.addTree(createBranches(20 + i * 9));
+        }
+
+        assertEquals(0, bytesPerRun(() -> painting.paintComponent(g)), "bytes per repaint");
+    }
+
+    @Test
+    public void clippedRepaintAllocatesNothing() {
+        TreePainting painting = createPainting();
+        for (int i = 0; i < 40; i++) {
+            painting.addTree(createBranches(20 + i * 9));
+        }
+        Graphics2D clipped = (Graphics2D) g.create();
+        clipped.clipRect(100, 100, 150, 150);
+
+        assertEquals(0, bytesPerRun(() -> painting.paintComponent(clipped)), "bytes per clipped repaint");
+    }
+
+    @Test
+    public void repaintWithLeavesAllocatesOnlyWhatJava2DDoes() {
+        TreePainting painting = createPainting();
+        painting.plantTree(200, 360, 200, 220, 1);
+        int leaves = painting.getTree().getNumLeaves();
+
+        //Java2D allocates a little for every oval it fills
+        long perLeaf = bytesPerRun(() -> g.fillOval(3, 4, 5, 5));
+        long perRepaint = bytesPerRun(() -> painting.paintComponent(g));
+
+        assertTrue(perRepaint <= leaves * perLeaf,
+                "bytes per repaint: " + perRepaint + ", Java2D's share: " + leaves + " leaves x " + perLeaf);
+    }
+
+    private static TreePainting createPainting() {
+        TreePainting painting = new TreePainting(ThemeRegistry.get("fall"));
+        painting.setRetainedMode(false);
+        painting.setSize(WIDTH, HEIGHT);
+        return painting;
+    }
+
+    /**
+     * @return a tree of a trunk and two branches, without leaves
+     */
+    private static TreeModel createBranches(float x) {
+        float[] segments = {x, 360, x, 220, x, 220, x - 40, 180, x, 220, x + 40, 180};
+        return new TreeModel(segments, new byte[]{0, 1, 1}, new float[0], new int[0], 4, TreeModel.NO_SEED);
+    }
+
+    /**
+     * @return the fewest bytes one run allocated, over several measured rounds
+     */
+    private static long bytesPerRun(Runnable run) {
+        for (int i = 0; i < WARMUP_PAINTS; i++) {
+            run.run();
+        }
+        long fewest = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            long startBytes = PaintMetrics.currentThreadAllocatedBytes();
+            for (int i = 0; i < MEASURED_PAINTS; i++) {
+                run.run();
+            }
+            fewest = Math.min(fewest, (PaintMetrics.currentThreadAllocatedBytes() - startBytes) / MEASURED_PAINTS);
+        }
+        return fewest;
+    }
+}
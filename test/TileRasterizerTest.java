@@ -0,0 +1,115 @@
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.ForkJoinPool;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.AfterAll;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * TileRasterizerTest checks that TileRasterizer renders a seeded forest
+ * with the same pixels as paintComponent on a plain BufferedImage:
+ * exactly at the painting's model size, and up to a few edge pixels
+ * when the painting is scaled.
+ *
+ * @author: Sabirah Shuaybi
+ */
+public class TileRasterizerTest {
+
+    private static final int WIDTH = 900;
+    private static final int HEIGHT = 600;
+
+    /**
+     * Scaled renders may differ in at most this many pixels per thousand
+     * leaves (edges through pixel centers may be rounded the other way)
+     **/
+    private static final int MAX_DIFFERENT_PIXELS_PER_1000_LEAVES = 1;
+
+    /**
+     * A pool of several threads, so tiles really are rendered in parallel
+     **/
+    private static final ForkJoinPool POOL = new ForkJoinPool(4);
+
+    @AfterAll
+    public static void tearDown() {
+        POOL.shutdown();
+    }
+
+    @Test
+    public void modelSizeMatchesPaintComponent() {
+        for (String season : ThemeRegistry.getNames()) {
+            TreePainting painting = createForest(season);
+
+            assertEquals(0, countDifferentPixels(painting, WIDTH, HEIGHT), season + ": different pixels");
+        }
+    }
+
+    @Test
+    public void scaledPaintingDiffersInFewEdgePixels() {
+        for (String season : ThemeRegistry.getNames()) {
+            TreePainting painting = createForest(season);
+            int leaves = countLeaves(painting);
+
+            //Larger by a round and an odd factor, and shrunk to a little more than half
+            for (double scale : new double[]{1.5, 1.37, 0.6}) {
+                int different = countDifferentPixels(painting, (int) (WIDTH * scale), (int) (HEIGHT * scale));
+                assertTrue(different <= leaves * MAX_DIFFERENT_PIXELS_PER_1000_LEAVES / 1000,
+                        season + " x" + scale + ": " + different + " different pixels for " + leaves + " leaves");
+            }
+        }
+    }
+
+    /**
+     * @return a painting of several seeded trees of the season,
+     * stored at WIDTH x HEIGHT
+     */
+    private static TreePainting createForest(String season) {
+        TreePainting painting = new TreePainting(ThemeRegistry.get(season));
+        painting.setRetainedMode(false);
+        painting.setSize(WIDTH, HEIGHT);
+        painting.setModelSize(WIDTH, HEIGHT);
+        //Deeper than the themes' trees, so there are thousands of leaves, overlapping and tiny ones
+        painting.setTreeGenerator(new TreeGenerator(6, 4, TreePainting.BRANCH_CONE, TreeGenerator.DEFAULT_MAX_SEGMENTS));
+        painting.plantTree(150, 560, 160, 420, 1);
+        painting.plantTree(420, 580, 400, 400, 2);
+        painting.plantTree(700, 570, 720, 450, 3);
+        painting.plantTree(560, 590, 555, 520, 4);
+        return painting;
+    }
+
+    private static int countLeaves(TreePainting painting) {
+        int leaves = 0;
+        for (TreeModel tree : painting.getForest().getTrees()) {
+            leaves += tree.getNumLeaves();
+        }
+        return leaves;
+    }
+
+    /**
+     * Renders the painting at the given size both with paintComponent
+     * and with a TileRasterizer.
+     *
+     * @return the number of pixels in which the two images differ
+     */
+    private static int countDifferentPixels(TreePainting painting, int width, int height) {
+        painting.setSize(width, height);
+
+        BufferedImage painted = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = painted.createGraphics();
+        painting.paintComponent(g);
+        g.dispose();
+
+        BufferedImage rasterized = new TileRasterizer(POOL).render(painting, width, height);
+
+        int different = 0;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                if (painted.getRGB(x, y) != rasterized.getRGB(x, y)) {
+                    different++;
+                }
+            }
+        }
+        return different;
+    }
+}